@@ -1,124 +1,329 @@
 package org.firespeed.both;
 
 import android.content.Context;
-import android.os.Bundle;
-
-import com.google.android.gms.common.ConnectionResult;
-import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.api.ResultCallback;
-import com.google.android.gms.wearable.DataApi;
-import com.google.android.gms.wearable.DataEvent;
-import com.google.android.gms.wearable.DataEventBuffer;
-import com.google.android.gms.wearable.DataItem;
-import com.google.android.gms.wearable.DataItemBuffer;
+
 import com.google.android.gms.wearable.DataMap;
-import com.google.android.gms.wearable.DataMapItem;
-import com.google.android.gms.wearable.PutDataMapRequest;
-import com.google.android.gms.wearable.Wearable;
 
-import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * Created by kenz on 2015/11/19.
  */
-public class Config implements DataApi.DataListener,
-        GoogleApiClient.ConnectionCallbacks, GoogleApiClient.OnConnectionFailedListener {
+public class Config implements ConfigTransport.Receiver {
     private static final String PATH = "/config";
+    /**
+     * 古い版が送ってくる、秒針が連続して動くかどうか. 今は{@link #MOTION}から作って送るだけ.
+     */
     private static final String KEY_SMOOTH_MOVE = "SMOOTH_MOVE";
+    /**
+     * 設定の版. 端末内の保存値と相手から届いた値のどちらが新しいかを決める.
+     */
+    private static final String KEY_VERSION = "VERSION";
+    /**
+     * その版を書いた端末の識別子. 両方の端末が同じ版を書いた時に、値の大きい方を採る.
+     */
+    private static final String KEY_WRITER = "WRITER";
+
+    /**
+     * 秒針が連続して動く.
+     */
+    public static final int MOTION_SMOOTH = 0;
+    /**
+     * 秒針が秒の頭で一気に動く.
+     */
+    public static final int MOTION_TICK = 1;
+    /**
+     * 秒針が秒の終わりの200msで加速しながら動く.
+     */
+    public static final int MOTION_QUADRATIC_EASE = 2;
+    /**
+     * 秒針が1秒に8回刻んで動く.
+     */
+    public static final int MOTION_SWEEP_8HZ = 3;
+    /**
+     * 秒針が行き過ぎてから戻る.
+     */
+    public static final int MOTION_SPRING = 4;
+
+    /**
+     * 秒針の動き方. MOTION_で始まる値のどれか.
+     */
+    public static final ConfigKey MOTION = ConfigKey.enumKey("MOTION", MOTION_SPRING + 1, MOTION_QUADRATIC_EASE);
+    /**
+     * 秒針の色.
+     */
+    public static final ConfigKey SECOND_HAND_COLOR = ConfigKey.colorKey("SECOND_HAND_COLOR", 0xffcccccc);
+
+    /**
+     * 時針と分針を画像で描く.
+     */
+    public static final int HAND_STYLE_BITMAP = 0;
+    /**
+     * 時針と分針をパスで描く.
+     */
+    public static final int HAND_STYLE_VECTOR = 1;
+    /**
+     * 時針と分針の描き方. HAND_STYLE_で始まる値のどれか.
+     */
+    public static final ConfigKey HAND_STYLE = ConfigKey.enumKey("HAND_STYLE", HAND_STYLE_VECTOR + 1, HAND_STYLE_BITMAP);
+
+    private final ConfigTransport mTransport;
+    private final ConfigWriter mWriter;
+    private final ConfigStore mStore;
+    private final ConfigDispatcher mDispatcher;
+    /**
+     * この端末の識別子.
+     */
+    private final long mLocalWriter;
+    /**
+     * 今の設定. 書き込みは同期して写しを差し替え、読み出しはロックなしで行う.
+     */
+    private volatile ConfigSnapshot mSnapshot;
+
+    /**
+     * 今の設定. 描画スレッドからも呼べる.
+     */
+    public ConfigSnapshot getSnapshot() {
+        return mSnapshot;
+    }
 
-    private GoogleApiClient mGoogleApiClient;
-    private boolean mIsSmooth;
     public boolean isSmooth() {
-        return mIsSmooth;
+        return getMotion() == MOTION_SMOOTH;
     }
+
     public void setIsSmooth(boolean isSmooth) {
-        mIsSmooth = isSmooth;
-        PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(PATH);
-        DataMap dataMap = putDataMapRequest.getDataMap();
-        dataMap.putBoolean(KEY_SMOOTH_MOVE, mIsSmooth);
-        Wearable.DataApi.putDataItem(mGoogleApiClient, putDataMapRequest.asPutDataRequest());
-   }
+        setMotion(isSmooth ? MOTION_SMOOTH : MOTION_QUADRATIC_EASE);
+    }
 
-    private final WeakReference<OnConfigChangedListener> mConfigChangedListenerWeakReference;
+    public int getMotion() {
+        return mSnapshot.getInt(MOTION);
+    }
 
-    public Config(Context context, OnConfigChangedListener reference) {
-        if (reference == null) {
-            mConfigChangedListenerWeakReference = null;
-        } else {
-            mConfigChangedListenerWeakReference = new WeakReference<>(reference);
+    public void setMotion(int motion) {
+        setInt(MOTION, motion);
+    }
+
+    public void setBoolean(ConfigKey key, boolean value) {
+        checkType(key, ConfigKey.TYPE_BOOLEAN);
+        set(key, value ? 1 : 0);
+    }
+
+    /**
+     * 整数か列挙の項目を変える.
+     */
+    public void setInt(ConfigKey key, int value) {
+        if (key.getType() != ConfigKey.TYPE_ENUM) {
+            checkType(key, ConfigKey.TYPE_INT);
         }
-        mGoogleApiClient = new GoogleApiClient.Builder(context)
-                .addConnectionCallbacks(this)
-                .addOnConnectionFailedListener(this)
-                .addApi(Wearable.API)
-                .build();
+        set(key, value);
     }
 
-    public void connect() {
-        mGoogleApiClient.connect();
-        Wearable.DataApi.addListener(mGoogleApiClient, this);
+    public void setColor(ConfigKey key, int color) {
+        checkType(key, ConfigKey.TYPE_COLOR);
+        set(key, color);
     }
 
-    public void disconnect() {
-        if (mGoogleApiClient != null && mGoogleApiClient.isConnected()) {
-            Wearable.DataApi.removeListener(mGoogleApiClient, this);
-            mGoogleApiClient.disconnect();
+    private static void checkType(ConfigKey key, int type) {
+        if (key.getType() != type) {
+            throw new IllegalArgumentException(key + " is not of type " + type);
         }
     }
 
-    @Override
-    public void onConnected(Bundle bundle) {
-        Wearable.DataApi.getDataItems(mGoogleApiClient)
-                .setResultCallback(new ResultCallback<DataItemBuffer>() {
-                    @Override
-                    public void onResult(DataItemBuffer dataItems) {
-                        for (DataItem dataItem : dataItems) {
-                            if (dataItem.getUri().getPath().equals(PATH)) {
-                                DataMap dataMap = DataMap.fromByteArray(dataItem.getData());
-                                mIsSmooth = dataMap.getBoolean(KEY_SMOOTH_MOVE, true);
-                                if (mConfigChangedListenerWeakReference != null) {
-                                    OnConfigChangedListener listener = mConfigChangedListenerWeakReference.get();
-                                    if (listener != null) {
-                                        listener.onConfigChanged(Config.this);
-                                    }
-                                }
-                            }
-                        }
-                        dataItems.release();
-                    }
-                });
+    private synchronized void set(ConfigKey key, int value) {
+        if (!key.isValid(value)) {
+            throw new IllegalArgumentException("invalid value for " + key + ": " + value);
+        }
+        ConfigSnapshot current = mSnapshot;
+        if (current.get(key) == value) {
+            return;
+        }
+        ConfigSnapshot next = current.with(key, value, current.getVersion() + 1, mLocalWriter);
+        mSnapshot = next;
+        mStore.save(next);
+        // 変わった項目だけを送る. 送らなかった項目は相手に届いているものがそのまま残る
+        publish(next, current.diff(next));
+        mDispatcher.dispatch(next);
     }
 
-    @Override
-    public void onConnectionSuspended(int i) {
+    /**
+     * 指定した項目と、版・書いた端末・旧形式のSMOOTH_MOVEを送る.
+     */
+    private void publish(ConfigSnapshot snapshot, List<ConfigKey> keys) {
+        for (ConfigKey key : keys) {
+            if (key.getType() == ConfigKey.TYPE_BOOLEAN) {
+                mWriter.putBoolean(key.getName(), snapshot.getBoolean(key));
+            } else {
+                mWriter.putInt(key.getName(), snapshot.get(key));
+            }
+        }
+        mWriter.putBoolean(KEY_SMOOTH_MOVE, snapshot.getInt(MOTION) == MOTION_SMOOTH);
+        mWriter.putLong(KEY_VERSION, snapshot.getVersion());
+        mWriter.putLong(KEY_WRITER, snapshot.getWriter());
+    }
 
+    /**
+     * 全ての項目と、版・書いた端末・旧形式のSMOOTH_MOVEを入れたDataMap.
+     */
+    private static DataMap toDataMap(ConfigSnapshot snapshot) {
+        DataMap dataMap = new DataMap();
+        for (ConfigKey key : ConfigKey.keys()) {
+            if (key.getType() == ConfigKey.TYPE_BOOLEAN) {
+                dataMap.putBoolean(key.getName(), snapshot.getBoolean(key));
+            } else {
+                dataMap.putInt(key.getName(), snapshot.get(key));
+            }
+        }
+        dataMap.putBoolean(KEY_SMOOTH_MOVE, snapshot.getInt(MOTION) == MOTION_SMOOTH);
+        dataMap.putLong(KEY_VERSION, snapshot.getVersion());
+        dataMap.putLong(KEY_WRITER, snapshot.getWriter());
+        return dataMap;
     }
 
-    @Override
-    public void onDataChanged(DataEventBuffer dataEventBuffer) {
-        for (DataEvent event : dataEventBuffer) {
-            if (event.getType() == DataEvent.TYPE_CHANGED) {
-                DataItem item = event.getDataItem();
-                if (item.getUri().getPath().equals(PATH)) {
-                    DataMap dataMap = DataMapItem.fromDataItem(item).getDataMap();
-                    mIsSmooth = dataMap.getBoolean(KEY_SMOOTH_MOVE);
-                    if (mConfigChangedListenerWeakReference != null) {
-                        OnConfigChangedListener listener = mConfigChangedListenerWeakReference.get();
-                        if (listener != null) {
-                            listener.onConfigChanged(Config.this);
-                        }
-                    }
-                }
+    /**
+     * 書き込みをまとめる時間を変える.
+     */
+    public void setWriteDebounceMs(long debounceMs) {
+        mWriter.setDebounceMs(debounceMs);
+    }
+
+    /**
+     * 同じ値だったため送らなかった書き込みの数.
+     */
+    public int getSuppressedWriteCount() {
+        return mWriter.getSuppressedCount();
+    }
+
+    /**
+     * DataMapから項目の値を読み出す. 入っていないか範囲外であればdefaultValueを返す.
+     * MOTIONがない古いデータはSMOOTH_MOVEから決める.
+     */
+    private static int readValue(DataMap dataMap, ConfigKey key, int defaultValue) {
+        int value;
+        if (dataMap.containsKey(key.getName())) {
+            if (key.getType() == ConfigKey.TYPE_BOOLEAN) {
+                value = dataMap.getBoolean(key.getName()) ? 1 : 0;
+            } else {
+                value = dataMap.getInt(key.getName());
             }
+        } else if (key == MOTION && dataMap.containsKey(KEY_SMOOTH_MOVE)) {
+            value = dataMap.getBoolean(KEY_SMOOTH_MOVE) ? MOTION_SMOOTH : MOTION_QUADRATIC_EASE;
+        } else {
+            return defaultValue;
+        }
+        return key.isValid(value) ? value : defaultValue;
+    }
+
+    /**
+     * 相手から届いた設定を取り込む. 版が手元より新しければ採用して保存し、
+     * 手元の方が新しければ手元の設定を送り直す. 版が同じで値が違う時は、両方の端末で同じ結果になるよう
+     * 書いた端末の識別子が大きい方を採る. 値が変わっていればリスナーに配る.
+     */
+    private synchronized void onRemoteDataMap(DataMap dataMap) {
+        mWriter.onRemoteDataMap(dataMap);
+        ConfigSnapshot current = mSnapshot;
+        long remoteVersion = dataMap.getLong(KEY_VERSION, 0);
+        long remoteWriter = dataMap.getLong(KEY_WRITER, 0);
+        int[] values = current.copyValues();
+        for (ConfigKey key : ConfigKey.keys()) {
+            values[key.getIndex()] = readValue(dataMap, key, values[key.getIndex()]);
+        }
+        ConfigSnapshot next = new ConfigSnapshot(values, remoteVersion, remoteWriter);
+        List<ConfigKey> changed = current.diff(next);
+        if (remoteVersion < current.getVersion()) {
+            publish(current, Arrays.asList(ConfigKey.keys()));
+            return;
+        }
+        if (remoteVersion == current.getVersion() && remoteWriter < current.getWriter()) {
+            if (!changed.isEmpty()) {
+                // オフラインの間に両方で変えた. 相手が手元の値を採るように送り直す
+                publish(current, Arrays.asList(ConfigKey.keys()));
+            }
+            return;
+        }
+        mSnapshot = next;
+        mStore.save(next);
+        if (!changed.isEmpty()) {
+            // リスナーは後で別のスレッドから呼ばれるので、ここでは待たない
+            mDispatcher.dispatch(next);
+        }
+    }
+
+    /**
+     * 設定の変更を受けるリスナーを加える. 手元での変更も相手から届いた変更も伝える.
+     * リスナーは強参照で持つので、Activityなどは{@link #removeOnConfigChangedListener}をonDestroyで呼ぶこと.
+     *
+     * @param executor リスナーを呼ぶスレッド. {@link ConfigDispatcher#mainExecutor}など
+     */
+    public void addOnConfigChangedListener(OnConfigChangedListener listener, Executor executor) {
+        mDispatcher.subscribe(listener, executor);
+    }
+
+    public void removeOnConfigChangedListener(OnConfigChangedListener listener) {
+        mDispatcher.unsubscribe(listener);
+    }
+
+    public ConfigDispatcher getDispatcher() {
+        return mDispatcher;
+    }
+
+    /**
+     * @param reference 設定の変更を受けるリスナー. メインスレッドで呼ぶ. nullでもよい.
+     *                  {@link #addOnConfigChangedListener}と同じく強参照で持つ
+     */
+    public Config(Context context, OnConfigChangedListener reference) {
+        this(new ConfigStore(context), new WearableTransport(WearableConnection.getInstance(context), PATH),
+                reference);
+    }
+
+    /**
+     * 保存先と経路を指定して作る. テストで二つのConfigをつなぐのに使う.
+     */
+    public Config(ConfigStore store, ConfigTransport transport, OnConfigChangedListener reference) {
+        mTransport = transport;
+        // 前回の設定をすぐに使えるようにしておく
+        mStore = store;
+        mSnapshot = mStore.load();
+        mLocalWriter = mStore.getLocalWriter();
+        mWriter = new ConfigWriter(transport, toDataMap(mSnapshot));
+        mDispatcher = new ConfigDispatcher(this);
+        if (reference != null) {
+            addOnConfigChangedListener(reference, ConfigDispatcher.mainExecutor());
         }
     }
 
+    /**
+     * 同期を始める. 何度呼んでも一度だけ数える.
+     */
+    public void connect() {
+        mTransport.connect(this);
+    }
+
+    /**
+     * 同期をやめる. 接続そのものは他の利用者やしばらく後の再利用のために残る.
+     */
+    public void disconnect() {
+        mWriter.flush();
+        mTransport.disconnect();
+    }
+
     @Override
-    public void onConnectionFailed(ConnectionResult connectionResult) {
+    public void onConnected() {
+        // つながる前に溜まった変更を送る
+        mWriter.flush();
+    }
 
+    @Override
+    public void onDataMap(DataMap dataMap) {
+        onRemoteDataMap(dataMap);
     }
 
     public interface OnConfigChangedListener {
-        void onConfigChanged(Config config);
+        /**
+         * @param snapshot    変更後の設定
+         * @param changedKeys 値が変わった項目
+         */
+        void onConfigChanged(Config config, ConfigSnapshot snapshot, List<ConfigKey> changedKeys);
     }
 }
@@ -0,0 +1,191 @@
+package org.firespeed.both;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 設定の変更を複数のリスナーに配る. リスナーごとに呼び出すスレッドを選べる.
+ * 1フレームの間に来た変更はまとめ、リスナーには前回伝えた時からの差分を一度だけ伝える.
+ * 受信側は配送を待たないので、遅いリスナーがいてもDataEventBufferの解放は遅れない.
+ * リスナーは強参照で持つ. ActivityなどConfigより先にいなくなるものは、onDestroyで{@link #unsubscribe}すること.
+ */
+public class ConfigDispatcher {
+    /**
+     * 変更をまとめる時間. 1フレーム分.
+     */
+    public static final long DEFAULT_COALESCE_MS = 16;
+
+    private static Executor sMainExecutor;
+    private static ExecutorService sBackgroundExecutor;
+
+    private final Config mConfig;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final List<Subscription> mSubscriptions = new CopyOnWriteArrayList<>();
+    private final AtomicReference<ConfigSnapshot> mLatest = new AtomicReference<>();
+    private final AtomicBoolean mFlushPosted = new AtomicBoolean();
+    private long mCoalesceMs = DEFAULT_COALESCE_MS;
+    /**
+     * 受信スレッドとメインスレッドの両方から数える.
+     */
+    private final AtomicInteger mDispatchCount = new AtomicInteger();
+    private volatile int mFlushCount;
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mFlushPosted.set(false);
+            mFlushCount++;
+            ConfigSnapshot latest = mLatest.get();
+            for (Subscription subscription : mSubscriptions) {
+                subscription.offer(latest);
+            }
+        }
+    };
+
+    /**
+     * 一つのリスナーへの配送. 配送待ちは常に一つだけで、後から来た変更はそれに合流する.
+     */
+    private class Subscription implements Runnable {
+        final Config.OnConfigChangedListener mListener;
+        final Executor mExecutor;
+        final AtomicReference<ConfigSnapshot> mPending = new AtomicReference<>();
+        final AtomicBoolean mQueued = new AtomicBoolean();
+        /**
+         * このリスナーに最後に伝えた設定. 配送するスレッドだけが触る.
+         */
+        ConfigSnapshot mDelivered;
+
+        Subscription(Config.OnConfigChangedListener listener, Executor executor, ConfigSnapshot current) {
+            mListener = listener;
+            mExecutor = executor;
+            mDelivered = current;
+        }
+
+        void offer(ConfigSnapshot snapshot) {
+            mPending.set(snapshot);
+            if (mQueued.compareAndSet(false, true)) {
+                mExecutor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            mQueued.set(false);
+            ConfigSnapshot snapshot = mPending.get();
+            if (snapshot == null || !mSubscriptions.contains(this)) {
+                return;
+            }
+            List<ConfigKey> changed = mDelivered.diff(snapshot);
+            mDelivered = snapshot;
+            if (!changed.isEmpty()) {
+                mListener.onConfigChanged(mConfig, snapshot, changed);
+            }
+        }
+    }
+
+    public ConfigDispatcher(Config config) {
+        mConfig = config;
+    }
+
+    /**
+     * メインスレッドで呼ぶ.
+     */
+    public static synchronized Executor mainExecutor() {
+        if (sMainExecutor == null) {
+            sMainExecutor = handlerExecutor(new Handler(Looper.getMainLooper()));
+        }
+        return sMainExecutor;
+    }
+
+    /**
+     * 指定したHandlerのスレッドで呼ぶ. 描画スレッドのHandlerを渡すのに使う.
+     */
+    public static Executor handlerExecutor(final Handler handler) {
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                handler.post(command);
+            }
+        };
+    }
+
+    /**
+     * 設定の変更を受けるための共有のスレッドで呼ぶ. 重い処理をするリスナー向け.
+     */
+    public static synchronized Executor backgroundExecutor() {
+        if (sBackgroundExecutor == null) {
+            sBackgroundExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "ConfigDispatcher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sBackgroundExecutor;
+    }
+
+    /**
+     * 変更をまとめる時間を変える. 0にすると次のメッセージで配る.
+     */
+    public void setCoalesceMs(long coalesceMs) {
+        mCoalesceMs = coalesceMs;
+    }
+
+    /**
+     * リスナーを加える. 既に加えているリスナーは何もしない.
+     * {@link #unsubscribe}するまで強参照で持つ.
+     */
+    public void subscribe(Config.OnConfigChangedListener listener, Executor executor) {
+        for (Subscription subscription : mSubscriptions) {
+            if (subscription.mListener == listener) {
+                return;
+            }
+        }
+        mSubscriptions.add(new Subscription(listener, executor, mConfig.getSnapshot()));
+    }
+
+    public void unsubscribe(Config.OnConfigChangedListener listener) {
+        for (Subscription subscription : mSubscriptions) {
+            if (subscription.mListener == listener) {
+                mSubscriptions.remove(subscription);
+            }
+        }
+    }
+
+    /**
+     * 新しい設定を配る. どのスレッドから呼んでもよく、すぐに戻る.
+     */
+    public void dispatch(ConfigSnapshot snapshot) {
+        mDispatchCount.incrementAndGet();
+        mLatest.set(snapshot);
+        if (mFlushPosted.compareAndSet(false, true)) {
+            mHandler.postDelayed(mFlushRunnable, mCoalesceMs);
+        }
+    }
+
+    /**
+     * {@link #dispatch}が呼ばれた回数.
+     */
+    public int getDispatchCount() {
+        return mDispatchCount.get();
+    }
+
+    /**
+     * まとめてリスナーに配った回数.
+     */
+    public int getFlushCount() {
+        return mFlushCount;
+    }
+}
@@ -0,0 +1,109 @@
+package org.firespeed.both;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 設定の項目. 値は型によらずintで持ち、真偽値は0と1、列挙は0から始まる番号、色はARGBで表す.
+ * 作った順に番号が振られ、{@link ConfigSnapshot}はその番号で値を引く.
+ */
+public final class ConfigKey {
+    public static final int TYPE_BOOLEAN = 0;
+    public static final int TYPE_INT = 1;
+    public static final int TYPE_ENUM = 2;
+    public static final int TYPE_COLOR = 3;
+
+    private static final List<ConfigKey> sKeys = new ArrayList<>();
+
+    private final String mName;
+    private final int mType;
+    private final int mIndex;
+    private final int mDefaultValue;
+    private final int mValueCount;
+
+    private ConfigKey(String name, int type, int index, int defaultValue, int valueCount) {
+        mName = name;
+        mType = type;
+        mIndex = index;
+        mDefaultValue = defaultValue;
+        mValueCount = valueCount;
+    }
+
+    public static ConfigKey booleanKey(String name, boolean defaultValue) {
+        return register(name, TYPE_BOOLEAN, defaultValue ? 1 : 0, 2);
+    }
+
+    public static ConfigKey intKey(String name, int defaultValue) {
+        return register(name, TYPE_INT, defaultValue, 0);
+    }
+
+    /**
+     * @param valueCount 取りうる値の数. 値は0からvalueCount-1まで
+     */
+    public static ConfigKey enumKey(String name, int valueCount, int defaultValue) {
+        return register(name, TYPE_ENUM, defaultValue, valueCount);
+    }
+
+    public static ConfigKey colorKey(String name, int defaultColor) {
+        return register(name, TYPE_COLOR, defaultColor, 0);
+    }
+
+    private static synchronized ConfigKey register(String name, int type, int defaultValue, int valueCount) {
+        for (ConfigKey key : sKeys) {
+            if (key.mName.equals(name)) {
+                throw new IllegalStateException("duplicate config key: " + name);
+            }
+        }
+        ConfigKey key = new ConfigKey(name, type, sKeys.size(), defaultValue, valueCount);
+        if (!key.isValid(defaultValue)) {
+            throw new IllegalArgumentException("invalid default value for " + name + ": " + defaultValue);
+        }
+        sKeys.add(key);
+        return key;
+    }
+
+    /**
+     * これまでに作られた全ての項目.
+     */
+    public static synchronized ConfigKey[] keys() {
+        return sKeys.toArray(new ConfigKey[sKeys.size()]);
+    }
+
+    static synchronized int count() {
+        return sKeys.size();
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public int getType() {
+        return mType;
+    }
+
+    int getIndex() {
+        return mIndex;
+    }
+
+    public int getDefaultValue() {
+        return mDefaultValue;
+    }
+
+    /**
+     * 値がこの項目で取りうるものかどうか.
+     */
+    public boolean isValid(int value) {
+        switch (mType) {
+            case TYPE_BOOLEAN:
+            case TYPE_ENUM:
+                return value >= 0 && value < mValueCount;
+            default:
+                return true;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return mName;
+    }
+}
@@ -0,0 +1,118 @@
+package org.firespeed.both;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ある時点の設定の値. 作った後は変わらないので、描画スレッドからロックなしで読める.
+ * 値を変える時は写しを作って差し替える.
+ */
+public final class ConfigSnapshot {
+    private final int[] mValues;
+    private final long mVersion;
+    private final long mWriter;
+
+    ConfigSnapshot(int[] values, long version) {
+        this(values, version, 0);
+    }
+
+    /**
+     * @param writer この版を書いた端末の識別子. 同じ版を両方の端末で書いた時に、どちらを採るかを決める
+     */
+    ConfigSnapshot(int[] values, long version, long writer) {
+        mValues = values;
+        mVersion = version;
+        mWriter = writer;
+    }
+
+    /**
+     * 全ての項目が既定値の設定.
+     */
+    static ConfigSnapshot defaults() {
+        ConfigKey[] keys = ConfigKey.keys();
+        int[] values = new int[keys.length];
+        for (ConfigKey key : keys) {
+            values[key.getIndex()] = key.getDefaultValue();
+        }
+        return new ConfigSnapshot(values, 0);
+    }
+
+    /**
+     * 型によらない値. 後から作られた項目で値を持っていなければ既定値を返す.
+     */
+    public int get(ConfigKey key) {
+        int index = key.getIndex();
+        return index < mValues.length ? mValues[index] : key.getDefaultValue();
+    }
+
+    public boolean getBoolean(ConfigKey key) {
+        return get(key) != 0;
+    }
+
+    public int getInt(ConfigKey key) {
+        return get(key);
+    }
+
+    public int getColor(ConfigKey key) {
+        return get(key);
+    }
+
+    /**
+     * 設定の版. 変更のたびに増える.
+     */
+    public long getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * この版を書いた端末の識別子. 分からなければ0.
+     */
+    public long getWriter() {
+        return mWriter;
+    }
+
+    /**
+     * 値を書き換えるための写し. 後から作られた項目の分は既定値で埋める.
+     */
+    int[] copyValues() {
+        ConfigKey[] keys = ConfigKey.keys();
+        int[] values = Arrays.copyOf(mValues, Math.max(mValues.length, keys.length));
+        for (int i = mValues.length; i < keys.length; i++) {
+            values[i] = keys[i].getDefaultValue();
+        }
+        return values;
+    }
+
+    /**
+     * 一つの項目を変えた写しを作る. 値が同じならこのまま返す.
+     */
+    ConfigSnapshot with(ConfigKey key, int value, long version) {
+        return with(key, value, version, mWriter);
+    }
+
+    /**
+     * 一つの項目を変え、書いた端末を差し替えた写しを作る.
+     */
+    ConfigSnapshot with(ConfigKey key, int value, long version, long writer) {
+        if (get(key) == value && mVersion == version && mWriter == writer) {
+            return this;
+        }
+        int[] values = copyValues();
+        values[key.getIndex()] = value;
+        return new ConfigSnapshot(values, version, writer);
+    }
+
+    /**
+     * 値が違う項目を返す.
+     */
+    public List<ConfigKey> diff(ConfigSnapshot other) {
+        List<ConfigKey> changed = new ArrayList<>();
+        for (ConfigKey key : ConfigKey.keys()) {
+            if (get(key) != other.get(key)) {
+                changed.add(key);
+            }
+        }
+        return changed;
+    }
+}
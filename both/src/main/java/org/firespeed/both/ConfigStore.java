@@ -0,0 +1,82 @@
+package org.firespeed.both;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.security.SecureRandom;
+
+/**
+ * 設定を端末内に保存しておく. Configの生成時に同期で読み出せるので、
+ * Google Play開発者サービスにつながる前の最初のフレームから正しい設定で描ける.
+ */
+public class ConfigStore {
+    private static final String PREFERENCES_NAME = "org.firespeed.both.config";
+    private static final String KEY_VERSION = "VERSION";
+    private static final String KEY_WRITER = "WRITER";
+    private static final String KEY_LOCAL_WRITER = "LOCAL_WRITER";
+
+    private final SharedPreferences mPreferences;
+
+    public ConfigStore(Context context) {
+        this(context, PREFERENCES_NAME);
+    }
+
+    /**
+     * 保存先の名前を指定して作る. 一つのプロセスで複数の端末を模す時に使う.
+     */
+    public ConfigStore(Context context, String preferencesName) {
+        mPreferences = context.getSharedPreferences(preferencesName, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * 保存している設定を読み出す. 保存していない項目や範囲外の値は既定値にする.
+     */
+    public ConfigSnapshot load() {
+        int[] values = ConfigSnapshot.defaults().copyValues();
+        for (ConfigKey key : ConfigKey.keys()) {
+            int value;
+            if (key.getType() == ConfigKey.TYPE_BOOLEAN) {
+                value = mPreferences.getBoolean(key.getName(), key.getDefaultValue() != 0) ? 1 : 0;
+            } else {
+                value = mPreferences.getInt(key.getName(), key.getDefaultValue());
+            }
+            if (key.isValid(value)) {
+                values[key.getIndex()] = value;
+            }
+        }
+        // 版は変更のたびに増え、相手の設定とどちらが新しいかの判断に使う
+        return new ConfigSnapshot(values, mPreferences.getLong(KEY_VERSION, 0), mPreferences.getLong(KEY_WRITER, 0));
+    }
+
+    /**
+     * この端末の識別子. 初めて呼んだ時に作って保存する. 0は古い版が書いたものを表すので使わない.
+     */
+    public long getLocalWriter() {
+        long writer = mPreferences.getLong(KEY_LOCAL_WRITER, 0);
+        if (writer == 0) {
+            SecureRandom random = new SecureRandom();
+            do {
+                writer = random.nextLong();
+            } while (writer == 0);
+            mPreferences.edit().putLong(KEY_LOCAL_WRITER, writer).apply();
+        }
+        return writer;
+    }
+
+    /**
+     * 全ての項目と版、版を書いた端末をまとめて保存する. 書き込みは非同期.
+     */
+    public void save(ConfigSnapshot snapshot) {
+        SharedPreferences.Editor editor = mPreferences.edit();
+        for (ConfigKey key : ConfigKey.keys()) {
+            if (key.getType() == ConfigKey.TYPE_BOOLEAN) {
+                editor.putBoolean(key.getName(), snapshot.getBoolean(key));
+            } else {
+                editor.putInt(key.getName(), snapshot.get(key));
+            }
+        }
+        editor.putLong(KEY_VERSION, snapshot.getVersion());
+        editor.putLong(KEY_WRITER, snapshot.getWriter());
+        editor.apply();
+    }
+}
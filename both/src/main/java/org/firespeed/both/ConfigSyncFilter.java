@@ -0,0 +1,56 @@
+package org.firespeed.both;
+
+import java.util.Arrays;
+
+/**
+ * 設定のDataItemを取り込むかどうかを決める. パスが違うものと、前回取り込んだものと
+ * 中身が同じものは弾くので、つなぎ直すたびにDataMapを作り直したりリスナーを呼んだりしない.
+ */
+public class ConfigSyncFilter {
+    private final String mPath;
+    private byte[] mLastData;
+    private int mAcceptedCount;
+    private int mSkippedCount;
+
+    public ConfigSyncFilter(String path) {
+        mPath = path;
+    }
+
+    public boolean matches(String path) {
+        return mPath.equals(path);
+    }
+
+    /**
+     * 取り込むべきDataItemであればtrueを返し、その中身を覚える.
+     */
+    public synchronized boolean accept(String path, byte[] data) {
+        if (!matches(path)) {
+            return false;
+        }
+        if (mLastData != null && Arrays.equals(mLastData, data)) {
+            mSkippedCount++;
+            return false;
+        }
+        mLastData = data == null ? null : data.clone();
+        mAcceptedCount++;
+        return true;
+    }
+
+    /**
+     * 覚えている中身を忘れ、次のDataItemを必ず取り込ませる.
+     */
+    public synchronized void reset() {
+        mLastData = null;
+    }
+
+    public synchronized int getAcceptedCount() {
+        return mAcceptedCount;
+    }
+
+    /**
+     * 前回と中身が同じだったため取り込まなかった数.
+     */
+    public synchronized int getSkippedCount() {
+        return mSkippedCount;
+    }
+}
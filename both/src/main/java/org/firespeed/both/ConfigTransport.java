@@ -0,0 +1,40 @@
+package org.firespeed.both;
+
+import com.google.android.gms.wearable.DataMap;
+
+/**
+ * 設定を相手の端末とやり取りする経路. 相手と共有する一つのDataMapを置き換えていく.
+ * 実機では{@link WearableTransport}、テストでは{@link LoopbackTransport}を使う.
+ * コールバックはメインスレッドかGMSのスレッドから来る.
+ */
+public interface ConfigTransport {
+    interface Receiver {
+        /**
+         * 送れるようになった.
+         */
+        void onConnected();
+
+        /**
+         * 共有しているDataMapが届いた. つながった時には今の内容が、その後は変わるたびに届く.
+         */
+        void onDataMap(DataMap dataMap);
+    }
+
+    interface PutCallback {
+        void onPutResult(boolean success);
+    }
+
+    /**
+     * やり取りを始める. 何度呼んでも一度だけ数える.
+     */
+    void connect(Receiver receiver);
+
+    void disconnect();
+
+    boolean isConnected();
+
+    /**
+     * 共有しているDataMapを置き換える.
+     */
+    void put(DataMap dataMap, PutCallback callback);
+}
@@ -0,0 +1,195 @@
+package org.firespeed.both;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.google.android.gms.wearable.DataMap;
+
+/**
+ * 設定の書き込みをまとめる. 一定時間内の変更は一つのDataMapにまとめて一度だけ送り、
+ * 相手に届いている値と同じものは送らない. 書き込むたびに無線を起こさないようにするため.
+ * 受信はGMSのスレッドから来るので、各メソッドは同期している.
+ */
+public class ConfigWriter {
+    public static final long DEFAULT_DEBOUNCE_MS = 500;
+    /**
+     * 送るのに失敗した時に送り直すまでの時間. 続けて失敗するたびに倍にする.
+     */
+    public static final long INITIAL_RETRY_DELAY_MS = 1000;
+    public static final long MAX_RETRY_DELAY_MS = 5 * 60 * 1000;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ConfigTransport mTransport;
+    /**
+     * まだ送っていない変更.
+     */
+    private final DataMap mPending = new DataMap();
+    /**
+     * 相手に届いていることが分かっている値. 相手から何も届いていない間は手元の値で埋めておく.
+     */
+    private final DataMap mAcknowledged = new DataMap();
+    private long mDebounceMs = DEFAULT_DEBOUNCE_MS;
+    private long mRetryDelayMs = INITIAL_RETRY_DELAY_MS;
+    private int mWriteCount;
+    private int mSuppressedCount;
+    private int mFailedCount;
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    public ConfigWriter(ConfigTransport transport) {
+        this(transport, new DataMap());
+    }
+
+    /**
+     * @param initial 手元の全項目の値. 送るDataMapは共有しているものを丸ごと置き換えるので、
+     *                相手から何も届いていないうちに送っても変えていない項目が消えないよう、これと合わせて送る
+     */
+    public ConfigWriter(ConfigTransport transport, DataMap initial) {
+        mTransport = transport;
+        mAcknowledged.putAll(initial);
+    }
+
+    /**
+     * 変更をまとめる時間. この間に来た変更は一度の書き込みになる.
+     */
+    public void setDebounceMs(long debounceMs) {
+        mDebounceMs = debounceMs;
+    }
+
+    public synchronized void putBoolean(String key, boolean value) {
+        if (!mPending.containsKey(key) && mAcknowledged.containsKey(key)
+                && mAcknowledged.getBoolean(key) == value) {
+            mSuppressedCount++;
+            return;
+        }
+        mPending.putBoolean(key, value);
+        schedule();
+    }
+
+    public synchronized void putInt(String key, int value) {
+        if (!mPending.containsKey(key) && mAcknowledged.containsKey(key)
+                && mAcknowledged.getInt(key) == value) {
+            mSuppressedCount++;
+            return;
+        }
+        mPending.putInt(key, value);
+        schedule();
+    }
+
+    public synchronized void putLong(String key, long value) {
+        if (!mPending.containsKey(key) && mAcknowledged.containsKey(key)
+                && mAcknowledged.getLong(key) == value) {
+            mSuppressedCount++;
+            return;
+        }
+        mPending.putLong(key, value);
+        schedule();
+    }
+
+    /**
+     * 相手から受け取った値を、届いている値として覚える.
+     */
+    public synchronized void onRemoteDataMap(DataMap dataMap) {
+        mAcknowledged.putAll(dataMap);
+    }
+
+    private void schedule() {
+        schedule(mDebounceMs);
+    }
+
+    private void schedule(long delayMs) {
+        mHandler.removeCallbacks(mFlushRunnable);
+        mHandler.postDelayed(mFlushRunnable, delayMs);
+    }
+
+    /**
+     * まとめている変更をすぐに送る.
+     */
+    public synchronized void flush() {
+        mHandler.removeCallbacks(mFlushRunnable);
+        if (mPending.isEmpty()) {
+            return;
+        }
+        // 既に届いている値と同じものはここで落とす
+        for (String key : mPending.keySet().toArray(new String[0])) {
+            if (mAcknowledged.containsKey(key) && mAcknowledged.get(key).equals(mPending.get(key))) {
+                mPending.remove(key);
+                mSuppressedCount++;
+            }
+        }
+        if (mPending.isEmpty()) {
+            return;
+        }
+        if (!mTransport.isConnected()) {
+            // つながった時にもう一度呼ばれるまで取っておく
+            return;
+        }
+        // 共有しているDataMapは丸ごと置き換わるので、届いている値と合わせて送る
+        final DataMap dataMap = new DataMap();
+        dataMap.putAll(mAcknowledged);
+        dataMap.putAll(mPending);
+        mPending.clear();
+        mWriteCount++;
+        mTransport.put(dataMap, new ConfigTransport.PutCallback() {
+            @Override
+            public void onPutResult(boolean success) {
+                if (success) {
+                    onPutSucceeded(dataMap);
+                } else {
+                    onPutFailed(dataMap);
+                }
+            }
+        });
+    }
+
+    private synchronized void onPutSucceeded(DataMap dataMap) {
+        mRetryDelayMs = INITIAL_RETRY_DELAY_MS;
+        onRemoteDataMap(dataMap);
+    }
+
+    /**
+     * 送れなかった値を、その後に新しい変更がなければ送り直す.
+     * 失敗が続く間は間隔を倍々に空け、無線を起こし続けないようにする.
+     */
+    private synchronized void onPutFailed(DataMap dataMap) {
+        mFailedCount++;
+        DataMap retry = new DataMap();
+        retry.putAll(dataMap);
+        for (String key : dataMap.keySet()) {
+            // 合わせて送った届いている値と、その後に変えたものは取っておかない
+            if (mPending.containsKey(key)
+                    || (mAcknowledged.containsKey(key) && mAcknowledged.get(key).equals(dataMap.get(key)))) {
+                retry.remove(key);
+            }
+        }
+        mPending.putAll(retry);
+        schedule(mRetryDelayMs);
+        mRetryDelayMs = Math.min(mRetryDelayMs * 2, MAX_RETRY_DELAY_MS);
+    }
+
+    /**
+     * 実際に送った回数.
+     */
+    public synchronized int getWriteCount() {
+        return mWriteCount;
+    }
+
+    /**
+     * 同じ値だったため送らなかった変更の数.
+     */
+    public synchronized int getSuppressedCount() {
+        return mSuppressedCount;
+    }
+
+    /**
+     * 送るのに失敗して送り直した数.
+     */
+    public synchronized int getFailedCount() {
+        return mFailedCount;
+    }
+}
@@ -0,0 +1,66 @@
+package org.firespeed.both;
+
+/**
+ * 腕時計の画面の大きさと形. 腕時計からスマートフォンに送り、
+ * スマートフォンはこれに合わせて背景と針を拡大縮小しておく.
+ */
+public final class DisplaySpec {
+    /**
+     * 背景と針の画像が想定している画面の大きさ.
+     */
+    public static final float DESIGNED_SIZE = 512f;
+
+    public final int width;
+    public final int height;
+    public final boolean round;
+
+    public DisplaySpec(int width, int height, boolean round) {
+        this.width = width;
+        this.height = height;
+        this.round = round;
+    }
+
+    /**
+     * 画像の拡大率. 長い方の辺に合わせる.
+     */
+    public float getScale() {
+        return Math.max(width, height) / DESIGNED_SIZE;
+    }
+
+    public float getBackgroundLeft() {
+        return (width - Math.max(width, height)) / 2f;
+    }
+
+    public float getBackgroundTop() {
+        return (height - Math.max(width, height)) / 2f;
+    }
+
+    /**
+     * 丸い画面で見えている円の半径. 中心は画面の中心で、背景と同じく長い方の辺に合わせる.
+     */
+    public float getVisibleRadius() {
+        return Math.max(width, height) / 2f;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof DisplaySpec)) {
+            return false;
+        }
+        DisplaySpec other = (DisplaySpec) o;
+        return width == other.width && height == other.height && round == other.round;
+    }
+
+    @Override
+    public int hashCode() {
+        return (width * 31 + height) * 2 + (round ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return width + "x" + height + (round ? " round" : " square");
+    }
+}
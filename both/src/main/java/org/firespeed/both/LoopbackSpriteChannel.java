@@ -0,0 +1,121 @@
+package org.firespeed.both;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.Executor;
+
+/**
+ * 同じプロセスの中で腕時計側とスマートフォン側をつなぐ経路. 実機なしで画像の受け渡しを試すためのもの.
+ * Data Layerと同じく、最後に送られた画面の情報と画像を覚えておき、後からつないだ側にも渡す.
+ * 画像は送るたびに別の版として扱う.
+ */
+public class LoopbackSpriteChannel implements SpriteChannel {
+    /**
+     * 二つの端の間で共有するもの.
+     */
+    private static class Link {
+        final Executor mExecutor;
+        DisplaySpec mDisplay;
+        DisplaySpec mSheetSpec;
+        byte[] mSheet;
+        String mSheetVersion;
+        int mSheetCount;
+        long mSheetBytes;
+
+        Link(Executor executor) {
+            mExecutor = executor;
+        }
+    }
+
+    private final Link mLink;
+    private LoopbackSpriteChannel mPeer;
+    private Listener mListener;
+
+    private LoopbackSpriteChannel(Link link) {
+        mLink = link;
+    }
+
+    /**
+     * つながった二つの端を作る.
+     *
+     * @param executor 受け取った側のリスナーを呼ぶスレッド
+     */
+    public static LoopbackSpriteChannel[] createPair(Executor executor) {
+        Link link = new Link(executor);
+        LoopbackSpriteChannel first = new LoopbackSpriteChannel(link);
+        LoopbackSpriteChannel second = new LoopbackSpriteChannel(link);
+        first.mPeer = second;
+        second.mPeer = first;
+        return new LoopbackSpriteChannel[]{first, second};
+    }
+
+    @Override
+    public void connect(Listener listener) {
+        mListener = listener;
+        if (mLink.mDisplay != null) {
+            deliverDisplay(this, mLink.mDisplay);
+        }
+        if (mLink.mSheet != null) {
+            deliverSheet(this, mLink.mSheetSpec, mLink.mSheetVersion, mLink.mSheet);
+        }
+    }
+
+    @Override
+    public void disconnect() {
+        mListener = null;
+    }
+
+    @Override
+    public void reportDisplay(DisplaySpec spec) {
+        mLink.mDisplay = spec;
+        deliverDisplay(mPeer, spec);
+    }
+
+    @Override
+    public void sendSpriteSheet(DisplaySpec spec, byte[] sheet) {
+        mLink.mSheetSpec = spec;
+        mLink.mSheet = sheet;
+        mLink.mSheetCount++;
+        mLink.mSheetBytes += sheet.length;
+        mLink.mSheetVersion = "loopback#" + mLink.mSheetCount;
+        deliverSheet(mPeer, spec, mLink.mSheetVersion, sheet);
+    }
+
+    private void deliverDisplay(final LoopbackSpriteChannel target, final DisplaySpec spec) {
+        mLink.mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Listener listener = target.mListener;
+                if (listener != null) {
+                    listener.onDisplaySpec(spec);
+                }
+            }
+        });
+    }
+
+    private void deliverSheet(final LoopbackSpriteChannel target, final DisplaySpec spec, final String version,
+                              final byte[] sheet) {
+        mLink.mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Listener listener = target.mListener;
+                if (listener != null && !listener.hasSpriteSheet(spec, version)) {
+                    listener.onSpriteSheet(spec, version, new ByteArrayInputStream(sheet));
+                }
+            }
+        });
+    }
+
+    /**
+     * 送られた画像の数.
+     */
+    public int getSheetCount() {
+        return mLink.mSheetCount;
+    }
+
+    /**
+     * 送られた画像の合計の大きさ.
+     */
+    public long getSheetBytes() {
+        return mLink.mSheetBytes;
+    }
+}
@@ -0,0 +1,133 @@
+package org.firespeed.both;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.google.android.gms.wearable.DataMap;
+
+import java.util.Random;
+
+/**
+ * 同じプロセスの中で二つのConfigをつなぐ経路. 実機なしで同期を試すためのもの.
+ * {@link #createPair}で作った二つが一つのDataMapを共有し、書き込みは指定した遅延の後に
+ * 相手に届く. 指定した割合で書き込みを失敗させられる.
+ */
+public class LoopbackTransport implements ConfigTransport {
+    /**
+     * 二つの端の間で共有するもの.
+     */
+    private static class Link {
+        final Handler mHandler;
+        final long mLatencyMs;
+        final float mLossRate;
+        final Random mRandom;
+        DataMap mDataMap;
+        int mPutCount;
+        int mLostCount;
+
+        Link(Looper looper, long latencyMs, float lossRate, long seed) {
+            mHandler = new Handler(looper);
+            mLatencyMs = latencyMs;
+            mLossRate = lossRate;
+            mRandom = new Random(seed);
+        }
+    }
+
+    private final Link mLink;
+    private LoopbackTransport mPeer;
+    private Receiver mReceiver;
+
+    private LoopbackTransport(Link link) {
+        mLink = link;
+    }
+
+    /**
+     * つながった二つの端を作る.
+     *
+     * @param looper    コールバックを呼ぶスレッド
+     * @param latencyMs 書き込みが相手に届くまでの時間
+     * @param lossRate  書き込みが失敗する割合(0から1)
+     * @param seed      失敗を決める乱数の種
+     */
+    public static LoopbackTransport[] createPair(Looper looper, long latencyMs, float lossRate, long seed) {
+        Link link = new Link(looper, latencyMs, lossRate, seed);
+        LoopbackTransport first = new LoopbackTransport(link);
+        LoopbackTransport second = new LoopbackTransport(link);
+        first.mPeer = second;
+        second.mPeer = first;
+        return new LoopbackTransport[]{first, second};
+    }
+
+    @Override
+    public void connect(final Receiver receiver) {
+        if (mReceiver != null) {
+            return;
+        }
+        mReceiver = receiver;
+        mLink.mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mReceiver != receiver) {
+                    return;
+                }
+                receiver.onConnected();
+                if (mLink.mDataMap != null) {
+                    receiver.onDataMap(copy(mLink.mDataMap));
+                }
+            }
+        });
+    }
+
+    @Override
+    public void disconnect() {
+        mReceiver = null;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return mReceiver != null;
+    }
+
+    @Override
+    public void put(DataMap dataMap, final PutCallback callback) {
+        final DataMap sent = copy(dataMap);
+        final boolean lost = mLink.mRandom.nextFloat() < mLink.mLossRate;
+        mLink.mPutCount++;
+        mLink.mHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                if (lost) {
+                    mLink.mLostCount++;
+                    callback.onPutResult(false);
+                    return;
+                }
+                mLink.mDataMap = sent;
+                callback.onPutResult(true);
+                Receiver peer = mPeer.mReceiver;
+                if (peer != null) {
+                    peer.onDataMap(copy(sent));
+                }
+            }
+        }, mLink.mLatencyMs);
+    }
+
+    /**
+     * 両方の端から書き込んだ回数.
+     */
+    public int getPutCount() {
+        return mLink.mPutCount;
+    }
+
+    /**
+     * 失敗させた書き込みの数.
+     */
+    public int getLostCount() {
+        return mLink.mLostCount;
+    }
+
+    private static DataMap copy(DataMap dataMap) {
+        DataMap copy = new DataMap();
+        copy.putAll(dataMap);
+        return copy;
+    }
+}
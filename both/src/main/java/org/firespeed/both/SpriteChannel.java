@@ -0,0 +1,45 @@
+package org.firespeed.both;
+
+import java.io.InputStream;
+
+/**
+ * 腕時計とスマートフォンの間で、画面の情報と拡大縮小済みの画像をやり取りする経路.
+ * 実機では{@link WearableSpriteChannel}、テストでは{@link LoopbackSpriteChannel}を使う.
+ */
+public interface SpriteChannel {
+    interface Listener {
+        /**
+         * 腕時計の画面の情報が届いた. つながった時には最後に届いていたものが来る.
+         */
+        void onDisplaySpec(DisplaySpec spec);
+
+        /**
+         * 届いた画像を既に持っているかどうか. 持っていれば読み出さない. ワーカースレッドから呼ぶことがある.
+         *
+         * @param version 届いた画像を表す文字列. 分からなければnull
+         */
+        boolean hasSpriteSheet(DisplaySpec spec, String version);
+
+        /**
+         * 画像が届いた. ワーカースレッドから呼ぶので、ここでファイルに書き出してよい.
+         * streamは呼び出しから戻った後に閉じる.
+         *
+         * @param version {@link #hasSpriteSheet}に渡したもの. 次からの判断のために覚えておく
+         */
+        void onSpriteSheet(DisplaySpec spec, String version, InputStream stream);
+    }
+
+    void connect(Listener listener);
+
+    void disconnect();
+
+    /**
+     * 腕時計の画面の情報を送る.
+     */
+    void reportDisplay(DisplaySpec spec);
+
+    /**
+     * {@link SpriteSheet}を送る.
+     */
+    void sendSpriteSheet(DisplaySpec spec, byte[] sheet);
+}
@@ -0,0 +1,94 @@
+package org.firespeed.both;
+
+import android.content.res.Resources;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Executor;
+
+/**
+ * スマートフォン側で、腕時計から届いた画面の情報に合わせて背景と針を拡大縮小し、送り返す.
+ * 同じ画面の情報に対しては一度だけ作る. 作ったものはメモリにしか覚えないので、
+ * 同じプロセスの中でつなぐ時に使う. 実機ではアプリが動いていなくても答えられるよう、サービスで同じことをする.
+ */
+public class SpritePublisher implements SpriteChannel.Listener {
+    private static final String TAG = "SpritePublisher";
+
+    private final Resources mResources;
+    private final SpriteChannel mChannel;
+    private final Executor mExecutor;
+    private final int mRotationSteps;
+    private DisplaySpec mPublished;
+    private int mRenderCount;
+
+    /**
+     * @param executor      画像を作るスレッド
+     * @param rotationSteps 0より大きければ回転済みの針も送る. {@link SpriteRenderer#render}を参照.
+     *                      今の文字盤は受け取っても使わないので、普段は0にしておく
+     */
+    public SpritePublisher(Resources resources, SpriteChannel channel, Executor executor, int rotationSteps) {
+        mResources = resources;
+        mChannel = channel;
+        mExecutor = executor;
+        mRotationSteps = rotationSteps;
+    }
+
+    public void start() {
+        mChannel.connect(this);
+    }
+
+    public void stop() {
+        mChannel.disconnect();
+    }
+
+    @Override
+    public synchronized void onDisplaySpec(final DisplaySpec spec) {
+        if (spec.equals(mPublished)) {
+            return;
+        }
+        mPublished = spec;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                publish(spec);
+            }
+        });
+    }
+
+    private void publish(DisplaySpec spec) {
+        try {
+            byte[] sheet = SpriteRenderer.render(mResources, spec, mRotationSteps);
+            synchronized (this) {
+                mRenderCount++;
+                if (!spec.equals(mPublished)) {
+                    // 作っている間に別の画面の情報が届いた
+                    return;
+                }
+            }
+            mChannel.sendSpriteSheet(spec, sheet);
+        } catch (IOException e) {
+            Log.w(TAG, "failed to render sprites for " + spec, e);
+            synchronized (this) {
+                mPublished = null;
+            }
+        }
+    }
+
+    @Override
+    public boolean hasSpriteSheet(DisplaySpec spec, String version) {
+        // 自分で送ったもの
+        return true;
+    }
+
+    @Override
+    public void onSpriteSheet(DisplaySpec spec, String version, InputStream stream) {
+    }
+
+    /**
+     * 画像を作った回数.
+     */
+    public synchronized int getRenderCount() {
+        return mRenderCount;
+    }
+}
@@ -0,0 +1,174 @@
+package org.firespeed.both;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapShader;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Shader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 背景と針を画面の大きさに合わせて拡大縮小し、{@link SpriteSheet}にまとめる.
+ * スマートフォンで腕時計の代わりに行うためのもの. 腕時計が自分で拡大縮小する時と同じ結果になる.
+ */
+public class SpriteRenderer {
+    /**
+     * 時針の画像を置く位置. 背景の画像の座標.
+     */
+    public static final float HOUR_LEFT = 244f;
+    public static final float HOUR_TOP = 80f;
+    /**
+     * 分針の画像を置く位置. 背景の画像の座標.
+     */
+    public static final float MINUTE_LEFT = 242f;
+    public static final float MINUTE_TOP = 54f;
+    /**
+     * 針が回転する中心. 背景の画像の座標.
+     */
+    public static final float PIVOT_X = 256f;
+    public static final float PIVOT_Y = 256f;
+    /**
+     * アンビエント用のビットマップで、描く画素とみなす不透明度の下限.
+     */
+    private static final int AMBIENT_ALPHA_THRESHOLD = 128;
+    private static final int DENSITY_BASE = 10000;
+
+    private SpriteRenderer() {
+    }
+
+    /**
+     * 画面に合わせた背景と針を作る. 時間がかかるのでワーカースレッドで呼ぶこと.
+     *
+     * @param rotationSteps 0より大きければ、一周をこの数に分けた回転済みの針も入れる
+     */
+    public static byte[] render(Resources resources, DisplaySpec spec, int rotationSteps) throws IOException {
+        float scale = spec.getScale();
+        SpriteSheet.Writer writer = new SpriteSheet.Writer(spec);
+        Bitmap scaled = decodeScaled(resources, R.drawable.background, scale);
+        Bitmap background = createDialBackground(scaled, spec);
+        add(writer, SpriteSheet.ID_BACKGROUND, SpriteSheet.STEP_NONE, background);
+        if (background != scaled) {
+            background.recycle();
+        }
+        scaled.recycle();
+        addHand(writer, resources, R.drawable.hour, SpriteSheet.ID_HOUR, SpriteSheet.ID_HOUR_AMBIENT,
+                scale, HOUR_LEFT, HOUR_TOP, rotationSteps);
+        addHand(writer, resources, R.drawable.minute, SpriteSheet.ID_MINUTE, SpriteSheet.ID_MINUTE_AMBIENT,
+                scale, MINUTE_LEFT, MINUTE_TOP, rotationSteps);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeTo(out);
+        return out.toByteArray();
+    }
+
+    private static void addHand(SpriteSheet.Writer writer, Resources resources, int resId, int id, int ambientId,
+                                float scale, float left, float top, int rotationSteps) {
+        Bitmap hand = decodeScaled(resources, resId, scale);
+        add(writer, id, SpriteSheet.STEP_NONE, hand);
+        Bitmap ambient = createAmbientBitmap(hand);
+        add(writer, ambientId, SpriteSheet.STEP_NONE, ambient);
+        ambient.recycle();
+        if (rotationSteps > 0) {
+            float pivotX = (PIVOT_X - left) * scale;
+            float pivotY = (PIVOT_Y - top) * scale;
+            Paint paint = new Paint();
+            paint.setFilterBitmap(true);
+            Matrix matrix = new Matrix();
+            for (int step = 0; step < rotationSteps; step++) {
+                Bitmap sprite = createRotatedSprite(hand, pivotX, pivotY, step * 360f / rotationSteps, paint, matrix);
+                add(writer, id, step, sprite);
+                sprite.recycle();
+            }
+        }
+        hand.recycle();
+    }
+
+    private static void add(SpriteSheet.Writer writer, int id, int step, Bitmap bitmap) {
+        ByteBuffer pixels = ByteBuffer.allocate(bitmap.getRowBytes() * bitmap.getHeight());
+        bitmap.copyPixelsToBuffer(pixels);
+        pixels.rewind();
+        writer.add(id, step, bitmap.getWidth(), bitmap.getHeight(),
+                bitmap.getConfig() == Bitmap.Config.ALPHA_8 ? SpriteSheet.BYTES_ALPHA_8 : SpriteSheet.BYTES_ARGB_8888,
+                pixels);
+    }
+
+    /**
+     * 目標の拡大率でデコードする. 元サイズのビットマップは経由しない.
+     */
+    public static Bitmap decodeScaled(Resources resources, int id, float scale) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inScaled = true;
+        options.inDensity = DENSITY_BASE;
+        options.inTargetDensity = Math.max(1, Math.round(DENSITY_BASE * scale));
+        options.inMutable = true;
+        return BitmapFactory.decodeResource(resources, id, options);
+    }
+
+    /**
+     * 拡大縮小済みの背景を画面の大きさに切り抜く. 丸い画面では見えない四隅を透明にする.
+     * 正方形の四角い画面では切り抜く必要がないので、渡したビットマップをそのまま返す.
+     */
+    public static Bitmap createDialBackground(Bitmap scaled, DisplaySpec spec) {
+        if (!spec.round && spec.width == spec.height) {
+            return scaled;
+        }
+        Bitmap background = Bitmap.createBitmap(spec.width, spec.height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(background);
+        if (spec.round) {
+            BitmapShader shader = new BitmapShader(scaled, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
+            Matrix matrix = new Matrix();
+            matrix.setTranslate(spec.getBackgroundLeft(), spec.getBackgroundTop());
+            shader.setLocalMatrix(matrix);
+            Paint paint = new Paint();
+            paint.setAntiAlias(true);
+            paint.setFilterBitmap(true);
+            paint.setShader(shader);
+            canvas.drawCircle(spec.width / 2f, spec.height / 2f, spec.getVisibleRadius(), paint);
+        } else {
+            canvas.drawBitmap(scaled, spec.getBackgroundLeft(), spec.getBackgroundTop(), null);
+        }
+        return background;
+    }
+
+    /**
+     * 回転の中心からビットマップの一番遠い角までを半径とした正方形に、回転した針を描く.
+     */
+    public static Bitmap createRotatedSprite(Bitmap source, float pivotX, float pivotY, float degrees,
+                                             Paint paint, Matrix matrix) {
+        int radius = getSpriteRadius(source, pivotX, pivotY);
+        Bitmap sprite = Bitmap.createBitmap(radius * 2, radius * 2, Bitmap.Config.ARGB_8888);
+        matrix.setTranslate(radius - pivotX, radius - pivotY);
+        matrix.postRotate(degrees, radius, radius);
+        new Canvas(sprite).drawBitmap(source, matrix, paint);
+        return sprite;
+    }
+
+    public static int getSpriteRadius(Bitmap source, float pivotX, float pivotY) {
+        float farX = Math.max(pivotX, source.getWidth() - pivotX);
+        float farY = Math.max(pivotY, source.getHeight() - pivotY);
+        return (int) Math.ceil(Math.sqrt(farX * farX + farY * farY));
+    }
+
+    /**
+     * アンビエント用に、不透明度を二値化したALPHA_8のビットマップを作る. 描く色はPaintの色になる.
+     */
+    public static Bitmap createAmbientBitmap(Bitmap source) {
+        Bitmap alpha = source.extractAlpha();
+        int rowBytes = alpha.getRowBytes();
+        ByteBuffer buffer = ByteBuffer.allocate(rowBytes * alpha.getHeight());
+        alpha.copyPixelsToBuffer(buffer);
+        byte[] pixels = buffer.array();
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = (pixels[i] & 0xff) >= AMBIENT_ALPHA_THRESHOLD ? (byte) 0xff : 0;
+        }
+        buffer.rewind();
+        alpha.copyPixelsFromBuffer(buffer);
+        return alpha;
+    }
+}
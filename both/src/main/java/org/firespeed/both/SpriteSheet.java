@@ -0,0 +1,199 @@
+package org.firespeed.both;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 拡大縮小済みの背景と針を画素のまま詰めたもの. スマートフォンで作って腕時計に送る.
+ * 画素はBitmap#copyPixelsToBufferの並びのままなので、受け取った側はデコードも拡大縮小もせずに
+ * Bitmap#copyPixelsFromBufferで戻せる. ファイルはメモリマップして読む.
+ * <p>
+ * 並び: 先頭に識別子、版、画面の大きさと形、項目の数. 続いて項目ごとに
+ * 番号、回転の段階、幅、高さ、1画素のバイト数、画素の位置と長さ. その後ろに画素を4バイト境界で並べる.
+ */
+public class SpriteSheet {
+    private static final int MAGIC = 0x53505231; // "SPR1"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 6 * 4;
+    private static final int ENTRY_BYTES = 7 * 4;
+
+    public static final int ID_BACKGROUND = 0;
+    public static final int ID_HOUR = 1;
+    public static final int ID_MINUTE = 2;
+    public static final int ID_HOUR_AMBIENT = 3;
+    public static final int ID_MINUTE_AMBIENT = 4;
+    /**
+     * 回転していない画像の段階.
+     */
+    public static final int STEP_NONE = -1;
+
+    public static final int BYTES_ALPHA_8 = 1;
+    public static final int BYTES_ARGB_8888 = 4;
+
+    public static class Entry {
+        public final int id;
+        public final int step;
+        public final int width;
+        public final int height;
+        public final int bytesPerPixel;
+        private final ByteBuffer mPixels;
+
+        private Entry(int id, int step, int width, int height, int bytesPerPixel, ByteBuffer pixels) {
+            this.id = id;
+            this.step = step;
+            this.width = width;
+            this.height = height;
+            this.bytesPerPixel = bytesPerPixel;
+            mPixels = pixels;
+        }
+
+        /**
+         * 画素. 呼ぶたびに先頭を指す別のバッファを返すので、複数のスレッドから読んでよい.
+         */
+        public ByteBuffer getPixels() {
+            return mPixels.duplicate();
+        }
+    }
+
+    private final DisplaySpec mSpec;
+    private final List<Entry> mEntries;
+
+    private SpriteSheet(DisplaySpec spec, List<Entry> entries) {
+        mSpec = spec;
+        mEntries = entries;
+    }
+
+    public DisplaySpec getSpec() {
+        return mSpec;
+    }
+
+    public int getEntryCount() {
+        return mEntries.size();
+    }
+
+    public Entry getEntry(int index) {
+        return mEntries.get(index);
+    }
+
+    /**
+     * 番号と回転の段階が一致する項目. なければnullを返す.
+     */
+    public Entry find(int id, int step) {
+        for (Entry entry : mEntries) {
+            if (entry.id == id && entry.step == step) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * ファイルをメモリマップして読む. 画素はマップしたまま参照する.
+     */
+    public static SpriteSheet map(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            // マップはチャネルを閉じても有効
+            return wrap(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    public static SpriteSheet wrap(ByteBuffer buffer) throws IOException {
+        try {
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("not a sprite sheet");
+            }
+            DisplaySpec spec = new DisplaySpec(buffer.getInt(8), buffer.getInt(12), buffer.getInt(16) != 0);
+            int count = buffer.getInt(20);
+            List<Entry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int position = HEADER_BYTES + i * ENTRY_BYTES;
+                int offset = buffer.getInt(position + 20);
+                int length = buffer.getInt(position + 24);
+                ByteBuffer pixels = buffer.duplicate();
+                pixels.limit(offset + length);
+                pixels.position(offset);
+                entries.add(new Entry(buffer.getInt(position), buffer.getInt(position + 4),
+                        buffer.getInt(position + 8), buffer.getInt(position + 12),
+                        buffer.getInt(position + 16), pixels.slice()));
+            }
+            return new SpriteSheet(spec, entries);
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("broken sprite sheet", e);
+        }
+    }
+
+    /**
+     * SpriteSheetを書き出す.
+     */
+    public static class Writer {
+        private final DisplaySpec mSpec;
+        private final List<Entry> mEntries = new ArrayList<>();
+
+        public Writer(DisplaySpec spec) {
+            mSpec = spec;
+        }
+
+        /**
+         * @param pixels Bitmap#copyPixelsToBufferで取り出した画素
+         */
+        public Writer add(int id, int step, int width, int height, int bytesPerPixel, ByteBuffer pixels) {
+            mEntries.add(new Entry(id, step, width, height, bytesPerPixel, pixels.duplicate()));
+            return this;
+        }
+
+        public void writeTo(OutputStream outputStream) throws IOException {
+            DataOutputStream out = new DataOutputStream(outputStream);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(mSpec.width);
+            out.writeInt(mSpec.height);
+            out.writeInt(mSpec.round ? 1 : 0);
+            out.writeInt(mEntries.size());
+            int offset = align(HEADER_BYTES + mEntries.size() * ENTRY_BYTES);
+            for (Entry entry : mEntries) {
+                int length = entry.mPixels.remaining();
+                out.writeInt(entry.id);
+                out.writeInt(entry.step);
+                out.writeInt(entry.width);
+                out.writeInt(entry.height);
+                out.writeInt(entry.bytesPerPixel);
+                out.writeInt(offset);
+                out.writeInt(length);
+                offset = align(offset + length);
+            }
+            pad(out);
+            for (Entry entry : mEntries) {
+                ByteBuffer pixels = entry.getPixels();
+                byte[] chunk = new byte[Math.min(pixels.remaining(), 64 * 1024)];
+                while (pixels.hasRemaining()) {
+                    int length = Math.min(chunk.length, pixels.remaining());
+                    pixels.get(chunk, 0, length);
+                    out.write(chunk, 0, length);
+                }
+                pad(out);
+            }
+            out.flush();
+        }
+
+        private static int align(int offset) {
+            return (offset + 3) & ~3;
+        }
+
+        private static void pad(DataOutputStream out) throws IOException {
+            while (out.size() % 4 != 0) {
+                out.writeByte(0);
+            }
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package org.firespeed.both;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.Wearable;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * プロセスで一つのGoogleApiClientを、使っている数を数えて共有する.
+ * GoogleApiClientは最初に使う時に作り、文字盤の起動を遅らせないようにする.
+ * 最後の利用者が離れてもしばらくはつないだままにしておき、画面の点灯と消灯のたびに
+ * つなぎ直さないようにする. 切れた時や失敗した時は間隔を倍々に空けてつなぎ直す.
+ * Google Play開発者サービスがない時など、つなぎ直しても直らない失敗と、利用者がいない時は
+ * つなぎ直さず、次の{@link #acquire}を待つ. メソッドはメインスレッドから呼ぶ.
+ */
+public class WearableConnection implements GoogleApiClient.ConnectionCallbacks,
+        GoogleApiClient.OnConnectionFailedListener {
+    public static final long DEFAULT_IDLE_TIMEOUT_MS = 30000;
+    private static final long INITIAL_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = 5 * 60 * 1000;
+
+    public interface Listener {
+        /**
+         * つながった. 利用を始めた時点でつながっていればすぐに呼ぶ.
+         */
+        void onWearableConnected(GoogleApiClient client);
+
+        /**
+         * 切れた. つなぎ直せば再び{@link #onWearableConnected}を呼ぶ.
+         */
+        void onWearableDisconnected();
+    }
+
+    private static WearableConnection sInstance;
+
+    private final Context mContext;
+    private GoogleApiClient mGoogleApiClient;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> mListeners = new ArrayList<>();
+    private long mIdleTimeoutMs = DEFAULT_IDLE_TIMEOUT_MS;
+    private long mBackoffMs = INITIAL_BACKOFF_MS;
+    private boolean mRetrying;
+    private int mLastErrorCode = ConnectionResult.SUCCESS;
+
+    private int mConnectCount;
+    private int mReconnectCount;
+    private int mFailureCount;
+    private long mConnectedMs;
+    private long mConnectedSince = -1;
+
+    private final Runnable mIdleRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mListeners.isEmpty()) {
+                disconnect();
+            }
+        }
+    };
+
+    private final Runnable mReconnectRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mListeners.isEmpty()) {
+                stopRetrying();
+                return;
+            }
+            mRetrying = true;
+            connect();
+        }
+    };
+
+    public static synchronized WearableConnection getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WearableConnection(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private WearableConnection(Context context) {
+        mContext = context;
+    }
+
+    public GoogleApiClient getClient() {
+        if (mGoogleApiClient == null) {
+            mGoogleApiClient = new GoogleApiClient.Builder(mContext)
+                    .addConnectionCallbacks(this)
+                    .addOnConnectionFailedListener(this)
+                    .addApi(Wearable.API)
+                    .build();
+        }
+        return mGoogleApiClient;
+    }
+
+    /**
+     * 最後の利用者が離れてから切るまでの時間.
+     */
+    public void setIdleTimeoutMs(long idleTimeoutMs) {
+        mIdleTimeoutMs = idleTimeoutMs;
+    }
+
+    /**
+     * 利用を始める. 同じリスナーで二度呼んでも一つとして数える.
+     */
+    public void acquire(Listener listener) {
+        if (mListeners.contains(listener)) {
+            return;
+        }
+        mListeners.add(listener);
+        mHandler.removeCallbacks(mIdleRunnable);
+        if (getClient().isConnected()) {
+            listener.onWearableConnected(mGoogleApiClient);
+        } else if (!mRetrying) {
+            // 再接続を待っている間はその時刻に任せる
+            connect();
+        }
+    }
+
+    /**
+     * 利用をやめる. 誰も使わなくなったらしばらくして切る.
+     */
+    public void release(Listener listener) {
+        if (!mListeners.remove(listener)) {
+            return;
+        }
+        if (mListeners.isEmpty()) {
+            // 誰も待っていないので、つなぎ直しの途中ならやめる
+            stopRetrying();
+            mHandler.removeCallbacks(mIdleRunnable);
+            mHandler.postDelayed(mIdleRunnable, mIdleTimeoutMs);
+        }
+    }
+
+    private void connect() {
+        GoogleApiClient client = getClient();
+        if (!client.isConnected() && !client.isConnecting()) {
+            client.connect();
+        }
+    }
+
+    private void disconnect() {
+        stopRetrying();
+        if (mGoogleApiClient != null && (mGoogleApiClient.isConnected() || mGoogleApiClient.isConnecting())) {
+            stopConnectedClock();
+            mGoogleApiClient.disconnect();
+        }
+    }
+
+    private void scheduleReconnect() {
+        if (mListeners.isEmpty()) {
+            stopRetrying();
+            return;
+        }
+        mHandler.removeCallbacks(mReconnectRunnable);
+        mHandler.postDelayed(mReconnectRunnable, mBackoffMs);
+        mRetrying = true;
+        mBackoffMs = Math.min(mBackoffMs * 2, MAX_BACKOFF_MS);
+    }
+
+    /**
+     * つなぎ直しをやめる. 次の{@link #acquire}ですぐにつなぐ.
+     */
+    private void stopRetrying() {
+        mHandler.removeCallbacks(mReconnectRunnable);
+        mRetrying = false;
+        mBackoffMs = INITIAL_BACKOFF_MS;
+    }
+
+    /**
+     * つなぎ直しても直らない失敗かどうか. 開発者サービスの入れ直しや更新には利用者の操作が要る.
+     */
+    private static boolean isUnrecoverable(int errorCode) {
+        switch (errorCode) {
+            case ConnectionResult.SERVICE_MISSING:
+            case ConnectionResult.SERVICE_INVALID:
+            case ConnectionResult.SERVICE_DISABLED:
+            case ConnectionResult.SERVICE_VERSION_UPDATE_REQUIRED:
+            case ConnectionResult.API_UNAVAILABLE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void stopConnectedClock() {
+        if (mConnectedSince >= 0) {
+            mConnectedMs += SystemClock.elapsedRealtime() - mConnectedSince;
+            mConnectedSince = -1;
+        }
+    }
+
+    @Override
+    public void onConnected(Bundle bundle) {
+        if (mRetrying) {
+            mReconnectCount++;
+        } else {
+            mConnectCount++;
+        }
+        mRetrying = false;
+        mBackoffMs = INITIAL_BACKOFF_MS;
+        mHandler.removeCallbacks(mReconnectRunnable);
+        mConnectedSince = SystemClock.elapsedRealtime();
+        for (Listener listener : mListeners.toArray(new Listener[mListeners.size()])) {
+            listener.onWearableConnected(mGoogleApiClient);
+        }
+    }
+
+    @Override
+    public void onConnectionSuspended(int cause) {
+        stopConnectedClock();
+        for (Listener listener : mListeners.toArray(new Listener[mListeners.size()])) {
+            listener.onWearableDisconnected();
+        }
+        scheduleReconnect();
+    }
+
+    @Override
+    public void onConnectionFailed(ConnectionResult connectionResult) {
+        mFailureCount++;
+        mLastErrorCode = connectionResult.getErrorCode();
+        stopConnectedClock();
+        if (isUnrecoverable(mLastErrorCode)) {
+            stopRetrying();
+            return;
+        }
+        scheduleReconnect();
+    }
+
+    /**
+     * 最初につながった回数. 切れてからのつなぎ直しは{@link #getReconnectCount}で数える.
+     */
+    public int getConnectCount() {
+        return mConnectCount;
+    }
+
+    public int getReconnectCount() {
+        return mReconnectCount;
+    }
+
+    public int getFailureCount() {
+        return mFailureCount;
+    }
+
+    /**
+     * つながっていた時間の合計. 今つながっていればその分も含む.
+     */
+    public long getConnectedMs() {
+        long connectedMs = mConnectedMs;
+        if (mConnectedSince >= 0) {
+            connectedMs += SystemClock.elapsedRealtime() - mConnectedSince;
+        }
+        return connectedMs;
+    }
+
+    public void dump(PrintWriter writer, String prefix) {
+        writer.print(prefix);
+        writer.println("users=" + mListeners.size()
+                + " connected=" + (mGoogleApiClient != null && mGoogleApiClient.isConnected())
+                + " connects=" + mConnectCount + " reconnects=" + mReconnectCount
+                + " failures=" + mFailureCount + " connectedMs=" + getConnectedMs()
+                + " backoffMs=" + mBackoffMs + " retrying=" + mRetrying + " lastError=" + mLastErrorCode);
+    }
+}
@@ -0,0 +1,212 @@
+package org.firespeed.both;
+
+import android.net.Uri;
+import android.util.Log;
+
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.ResultCallback;
+import com.google.android.gms.wearable.Asset;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.DataEvent;
+import com.google.android.gms.wearable.DataEventBuffer;
+import com.google.android.gms.wearable.DataItem;
+import com.google.android.gms.wearable.DataItemBuffer;
+import com.google.android.gms.wearable.DataMap;
+import com.google.android.gms.wearable.DataMapItem;
+import com.google.android.gms.wearable.PutDataMapRequest;
+import com.google.android.gms.wearable.PutDataRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Wearable Data Layerを使う経路. 画面の情報はDataItemで、画像はAssetで送る.
+ * 接続は{@link WearableConnection}を共有する.
+ */
+public class WearableSpriteChannel implements SpriteChannel, DataApi.DataListener,
+        WearableConnection.Listener {
+    private static final String TAG = "WearableSpriteChannel";
+    private static final String PATH_PREFIX = "/sprites";
+    private static final String PATH_DISPLAY = PATH_PREFIX + "/display";
+    private static final String PATH_SHEET = PATH_PREFIX + "/sheet";
+    private static final String KEY_WIDTH = "WIDTH";
+    private static final String KEY_HEIGHT = "HEIGHT";
+    private static final String KEY_ROUND = "ROUND";
+    private static final String KEY_SHEET = "SHEET";
+    /**
+     * 全ノードの画像関係のDataItemを指すURI. 前方一致で使う.
+     */
+    private static final Uri URI = new Uri.Builder()
+            .scheme(PutDataRequest.WEAR_URI_SCHEME).authority("*").path(PATH_PREFIX).build();
+
+    private final WearableConnection mConnection;
+    /**
+     * Assetの読み出しは待ちが入るので、専用のスレッドで行う. つないでいる間だけ持つ.
+     */
+    private volatile ExecutorService mExecutor;
+    private volatile Listener mListener;
+    /**
+     * 画像を送る側(スマートフォン)かどうか. 送る側は自分の送った画像を読み直さない.
+     */
+    private volatile boolean mSender;
+
+    public WearableSpriteChannel(WearableConnection connection) {
+        mConnection = connection;
+    }
+
+    @Override
+    public void connect(Listener listener) {
+        if (mListener != null) {
+            return;
+        }
+        mListener = listener;
+        mExecutor = Executors.newSingleThreadExecutor();
+        mConnection.acquire(this);
+    }
+
+    @Override
+    public void disconnect() {
+        if (mListener == null) {
+            return;
+        }
+        GoogleApiClient client = mConnection.getClient();
+        if (client.isConnected()) {
+            Wearable.DataApi.removeListener(client, this);
+        }
+        mListener = null;
+        // 読み出し中のものは終わるまで待たず、スレッドは最後の仕事の後に終わる
+        mExecutor.shutdown();
+        mExecutor = null;
+        mConnection.release(this);
+    }
+
+    @Override
+    public void reportDisplay(DisplaySpec spec) {
+        PutDataMapRequest request = PutDataMapRequest.create(PATH_DISPLAY);
+        putSpec(request.getDataMap(), spec);
+        Wearable.DataApi.putDataItem(mConnection.getClient(), request.asPutDataRequest());
+    }
+
+    @Override
+    public void sendSpriteSheet(DisplaySpec spec, byte[] sheet) {
+        mSender = true;
+        Wearable.DataApi.putDataItem(mConnection.getClient(), createSheetRequest(spec, sheet));
+    }
+
+    /**
+     * 画像を送るためのDataItem. 接続を自分で持つWearableListenerServiceから送る時に使う.
+     */
+    public static PutDataRequest createSheetRequest(DisplaySpec spec, byte[] sheet) {
+        PutDataMapRequest request = PutDataMapRequest.create(PATH_SHEET);
+        putSpec(request.getDataMap(), spec);
+        request.getDataMap().putAsset(KEY_SHEET, Asset.createFromBytes(sheet));
+        return request.asPutDataRequest();
+    }
+
+    /**
+     * 腕時計が知らせた画面の情報を読み出す. 画面の情報のDataItemでなければnullを返す.
+     */
+    public static DisplaySpec getDisplaySpec(DataItem item) {
+        if (!PATH_DISPLAY.equals(item.getUri().getPath())) {
+            return null;
+        }
+        return getSpec(DataMapItem.fromDataItem(item).getDataMap());
+    }
+
+    private static void putSpec(DataMap dataMap, DisplaySpec spec) {
+        dataMap.putInt(KEY_WIDTH, spec.width);
+        dataMap.putInt(KEY_HEIGHT, spec.height);
+        dataMap.putBoolean(KEY_ROUND, spec.round);
+    }
+
+    private static DisplaySpec getSpec(DataMap dataMap) {
+        return new DisplaySpec(dataMap.getInt(KEY_WIDTH), dataMap.getInt(KEY_HEIGHT), dataMap.getBoolean(KEY_ROUND));
+    }
+
+    @Override
+    public void onWearableConnected(GoogleApiClient client) {
+        Wearable.DataApi.addListener(client, this, URI, DataApi.FILTER_PREFIX);
+        Wearable.DataApi.getDataItems(client, URI, DataApi.FILTER_PREFIX)
+                .setResultCallback(new ResultCallback<DataItemBuffer>() {
+                    @Override
+                    public void onResult(DataItemBuffer dataItems) {
+                        for (DataItem dataItem : dataItems) {
+                            onDataItem(dataItem);
+                        }
+                        dataItems.release();
+                    }
+                });
+    }
+
+    @Override
+    public void onWearableDisconnected() {
+    }
+
+    @Override
+    public void onDataChanged(DataEventBuffer dataEventBuffer) {
+        for (DataEvent event : dataEventBuffer) {
+            if (event.getType() == DataEvent.TYPE_CHANGED) {
+                onDataItem(event.getDataItem());
+            }
+        }
+    }
+
+    private void onDataItem(DataItem item) {
+        final Listener listener = mListener;
+        if (listener == null) {
+            return;
+        }
+        String path = item.getUri().getPath();
+        // DataMapは取り出した時点で写しになるので、バッファの解放を待たせない
+        DataMap dataMap = DataMapItem.fromDataItem(item).getDataMap();
+        final DisplaySpec spec = getSpec(dataMap);
+        if (PATH_DISPLAY.equals(path)) {
+            listener.onDisplaySpec(spec);
+        } else if (PATH_SHEET.equals(path) && !mSender) {
+            final Asset asset = dataMap.getAsset(KEY_SHEET);
+            ExecutorService executor = mExecutor;
+            if (asset == null || executor == null) {
+                return;
+            }
+            // つなぐたびに届く同じDataItemは、保存済みなら読み出し直さない
+            final String version = asset.getDigest() != null ? item.getUri() + "#" + asset.getDigest() : null;
+            if (listener.hasSpriteSheet(spec, version)) {
+                return;
+            }
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        readAsset(listener, spec, version, asset);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // 切った直後に届いた
+            }
+        }
+    }
+
+    private void readAsset(Listener listener, DisplaySpec spec, String version, Asset asset) {
+        GoogleApiClient client = mConnection.getClient();
+        if (!client.isConnected()) {
+            return;
+        }
+        InputStream stream = Wearable.DataApi.getFdForAsset(client, asset).await().getInputStream();
+        if (stream == null) {
+            return;
+        }
+        try {
+            listener.onSpriteSheet(spec, version, stream);
+        } finally {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                Log.w(TAG, "failed to close sprite sheet", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package org.firespeed.both;
+
+import android.net.Uri;
+
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.ResultCallback;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.DataEvent;
+import com.google.android.gms.wearable.DataEventBuffer;
+import com.google.android.gms.wearable.DataItem;
+import com.google.android.gms.wearable.DataItemBuffer;
+import com.google.android.gms.wearable.DataMap;
+import com.google.android.gms.wearable.DataMapItem;
+import com.google.android.gms.wearable.PutDataMapRequest;
+import com.google.android.gms.wearable.PutDataRequest;
+import com.google.android.gms.wearable.Wearable;
+
+/**
+ * Wearable Data Layerを使う経路. 接続は{@link WearableConnection}を共有する.
+ */
+public class WearableTransport implements ConfigTransport, DataApi.DataListener,
+        WearableConnection.Listener {
+    private final WearableConnection mConnection;
+    private final String mPath;
+    /**
+     * 全ノードの指定パスのDataItemを指すURI.
+     */
+    private final Uri mUri;
+    private final ConfigSyncFilter mSyncFilter;
+    private Receiver mReceiver;
+
+    public WearableTransport(WearableConnection connection, String path) {
+        mConnection = connection;
+        mPath = path;
+        mUri = new Uri.Builder()
+                .scheme(PutDataRequest.WEAR_URI_SCHEME).authority("*").path(path).build();
+        mSyncFilter = new ConfigSyncFilter(path);
+    }
+
+    @Override
+    public void connect(Receiver receiver) {
+        if (mReceiver != null) {
+            return;
+        }
+        mReceiver = receiver;
+        mConnection.acquire(this);
+    }
+
+    @Override
+    public void disconnect() {
+        if (mReceiver == null) {
+            return;
+        }
+        GoogleApiClient client = mConnection.getClient();
+        if (client.isConnected()) {
+            Wearable.DataApi.removeListener(client, this);
+        }
+        mReceiver = null;
+        mConnection.release(this);
+    }
+
+    @Override
+    public boolean isConnected() {
+        return mConnection.getClient().isConnected();
+    }
+
+    @Override
+    public void put(DataMap dataMap, final PutCallback callback) {
+        PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(mPath);
+        putDataMapRequest.getDataMap().putAll(dataMap);
+        Wearable.DataApi.putDataItem(mConnection.getClient(), putDataMapRequest.asPutDataRequest())
+                .setResultCallback(new ResultCallback<DataApi.DataItemResult>() {
+                    @Override
+                    public void onResult(DataApi.DataItemResult dataItemResult) {
+                        callback.onPutResult(dataItemResult.getStatus().isSuccess());
+                    }
+                });
+    }
+
+    @Override
+    public void onWearableConnected(GoogleApiClient client) {
+        Wearable.DataApi.addListener(client, this, mUri, DataApi.FILTER_LITERAL);
+        Receiver receiver = mReceiver;
+        if (receiver != null) {
+            receiver.onConnected();
+        }
+        // 指定パスだけを問い合わせる
+        Wearable.DataApi.getDataItems(client, mUri)
+                .setResultCallback(new ResultCallback<DataItemBuffer>() {
+                    @Override
+                    public void onResult(DataItemBuffer dataItems) {
+                        for (DataItem dataItem : dataItems) {
+                            byte[] data = dataItem.getData();
+                            if (mSyncFilter.accept(dataItem.getUri().getPath(), data)) {
+                                deliver(DataMap.fromByteArray(data));
+                            }
+                        }
+                        dataItems.release();
+                    }
+                });
+    }
+
+    @Override
+    public void onWearableDisconnected() {
+    }
+
+    @Override
+    public void onDataChanged(DataEventBuffer dataEventBuffer) {
+        for (DataEvent event : dataEventBuffer) {
+            if (event.getType() == DataEvent.TYPE_CHANGED) {
+                DataItem item = event.getDataItem();
+                if (mSyncFilter.accept(item.getUri().getPath(), item.getData())) {
+                    deliver(DataMapItem.fromDataItem(item).getDataMap());
+                }
+            }
+        }
+    }
+
+    private void deliver(DataMap dataMap) {
+        Receiver receiver = mReceiver;
+        if (receiver != null) {
+            receiver.onDataMap(dataMap);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package org.firespeed.both;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+public class ConfigDispatcherTest {
+    private static class RecordingListener implements Config.OnConfigChangedListener {
+        final List<List<ConfigKey>> mChanges = new ArrayList<>();
+        volatile Thread mThread;
+
+        @Override
+        public void onConfigChanged(Config config, ConfigSnapshot snapshot, List<ConfigKey> changedKeys) {
+            mThread = Thread.currentThread();
+            mChanges.add(changedKeys);
+        }
+    }
+
+    private Config mConfig;
+
+    @Before
+    public void setUp() throws Exception {
+        LoopbackTransport[] transports = LoopbackTransport.createPair(Looper.getMainLooper(), 0, 0f, 1);
+        mConfig = new Config(new ConfigStore(RuntimeEnvironment.application, "dispatcher"), transports[0], null);
+    }
+
+    private static void idle(long ms) {
+        shadowOf(Looper.getMainLooper()).idleFor(ms, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void burstIsDeliveredOncePerFrame() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        mConfig.addOnConfigChangedListener(listener, ConfigDispatcher.mainExecutor());
+        mConfig.setMotion(Config.MOTION_SMOOTH);
+        mConfig.setMotion(Config.MOTION_TICK);
+        mConfig.setColor(Config.SECOND_HAND_COLOR, 0xff0000ff);
+        idle(ConfigDispatcher.DEFAULT_COALESCE_MS);
+        assertEquals(Arrays.asList(Arrays.asList(Config.MOTION, Config.SECOND_HAND_COLOR)), listener.mChanges);
+        assertEquals(3, mConfig.getDispatcher().getDispatchCount());
+        assertEquals(1, mConfig.getDispatcher().getFlushCount());
+    }
+
+    @Test
+    public void dispatchCountIsExactAcrossThreads() throws Exception {
+        final ConfigDispatcher dispatcher = mConfig.getDispatcher();
+        final ConfigSnapshot snapshot = mConfig.getSnapshot();
+        final int perThread = 1000;
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < perThread; j++) {
+                        dispatcher.dispatch(snapshot);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(threads.length * perThread, dispatcher.getDispatchCount());
+    }
+
+    @Test
+    public void unsubscribedListenerIsNotCalled() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        mConfig.addOnConfigChangedListener(listener, ConfigDispatcher.mainExecutor());
+        mConfig.removeOnConfigChangedListener(listener);
+        mConfig.setColor(Config.SECOND_HAND_COLOR, 0xff123456);
+        idle(ConfigDispatcher.DEFAULT_COALESCE_MS);
+        assertEquals(1, mConfig.getDispatcher().getFlushCount());
+        assertTrue(listener.mChanges.isEmpty());
+    }
+
+    @Test
+    public void changeAndRevertIsNotDelivered() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        mConfig.addOnConfigChangedListener(listener, ConfigDispatcher.mainExecutor());
+        int motion = mConfig.getMotion();
+        mConfig.setMotion(Config.MOTION_SPRING);
+        mConfig.setMotion(motion);
+        idle(ConfigDispatcher.DEFAULT_COALESCE_MS);
+        assertTrue(listener.mChanges.isEmpty());
+    }
+
+    @Test
+    public void listenerRunsOnItsExecutor() throws Exception {
+        HandlerThread thread = new HandlerThread("render");
+        thread.start();
+        RecordingListener listener = new RecordingListener();
+        mConfig.addOnConfigChangedListener(listener, ConfigDispatcher.handlerExecutor(new Handler(thread.getLooper())));
+        mConfig.setMotion(Config.MOTION_SPRING);
+        idle(ConfigDispatcher.DEFAULT_COALESCE_MS);
+        shadowOf(thread.getLooper()).idle();
+        assertSame(thread, listener.mThread);
+        thread.quit();
+    }
+
+    @Test
+    public void slowListenerDoesNotBlockDispatch() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Runnable> queued = new ArrayList<>();
+        Config.OnConfigChangedListener slow = new Config.OnConfigChangedListener() {
+            @Override
+            public void onConfigChanged(Config config, ConfigSnapshot snapshot, List<ConfigKey> changedKeys) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        // 実行を溜めておくだけのExecutor. 遅いリスナーの代わり
+        mConfig.addOnConfigChangedListener(slow, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                queued.add(command);
+            }
+        });
+        RecordingListener fast = new RecordingListener();
+        mConfig.addOnConfigChangedListener(fast, ConfigDispatcher.mainExecutor());
+        for (int i = 0; i < 100; i++) {
+            mConfig.setColor(Config.SECOND_HAND_COLOR, 0xff000000 | i);
+            idle(ConfigDispatcher.DEFAULT_COALESCE_MS);
+        }
+        // 遅いリスナーの配送待ちは一つにまとまり、速いリスナーは毎フレーム受け取る
+        assertEquals(1, queued.size());
+        assertEquals(100, fast.mChanges.size());
+        release.countDown();
+        queued.get(0).run();
+    }
+}
@@ -0,0 +1,149 @@
+package org.firespeed.both;
+
+import android.content.Context;
+import android.os.Looper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * スマートフォン側(MainActivity)と腕時計側(ConfigActivity, 文字盤)のConfigを
+ * {@link LoopbackTransport}でつなぎ、設定画面の操作が相手に届くまでを確かめる.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ConfigLoopbackTest {
+    private static final long LATENCY_MS = 50;
+    /**
+     * 書き込みがまとめられて相手に届くまで待つ時間.
+     */
+    private static final long SETTLE_MS = ConfigWriter.DEFAULT_DEBOUNCE_MS + LATENCY_MS + 100;
+
+    /**
+     * 届いた変更を覚えておくリスナー.
+     */
+    private static class RecordingListener implements Config.OnConfigChangedListener {
+        final List<List<ConfigKey>> mChanges = new ArrayList<>();
+
+        @Override
+        public void onConfigChanged(Config config, ConfigSnapshot snapshot, List<ConfigKey> changedKeys) {
+            mChanges.add(changedKeys);
+        }
+    }
+
+    private final RecordingListener mPhoneListener = new RecordingListener();
+    private final RecordingListener mWatchListener = new RecordingListener();
+    private LoopbackTransport[] mTransports;
+    private Config mPhone;
+    private Config mWatch;
+
+    @Before
+    public void setUp() throws Exception {
+        connect(0f);
+    }
+
+    private void connect(float lossRate) {
+        Context context = RuntimeEnvironment.application;
+        mTransports = LoopbackTransport.createPair(Looper.getMainLooper(), LATENCY_MS, lossRate, 1);
+        mPhone = new Config(new ConfigStore(context, "phone" + lossRate), mTransports[0], mPhoneListener);
+        mWatch = new Config(new ConfigStore(context, "watch" + lossRate), mTransports[1], mWatchListener);
+        mPhone.connect();
+        mWatch.connect();
+        idle(0);
+    }
+
+    private static void idle(long ms) {
+        shadowOf(Looper.getMainLooper()).idleFor(ms, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void phoneCheckBoxReachesWatch() throws Exception {
+        mPhone.setIsSmooth(true);
+        idle(SETTLE_MS);
+        assertTrue(mWatch.isSmooth());
+        assertEquals(Collections.singletonList(Collections.singletonList(Config.MOTION)), mWatchListener.mChanges);
+        // 手元での変更も一度だけ伝わる
+        assertEquals(Collections.singletonList(Collections.singletonList(Config.MOTION)), mPhoneListener.mChanges);
+    }
+
+    @Test
+    public void watchTapReachesPhone() throws Exception {
+        mWatch.setIsSmooth(!mWatch.isSmooth());
+        idle(SETTLE_MS);
+        assertEquals(mWatch.isSmooth(), mPhone.isSmooth());
+        assertEquals(1, mPhoneListener.mChanges.size());
+    }
+
+    @Test
+    public void onlyChangedKeysAreNotified() throws Exception {
+        mPhone.setColor(Config.SECOND_HAND_COLOR, 0xffff0000);
+        idle(SETTLE_MS);
+        assertEquals(0xffff0000, mWatch.getSnapshot().getColor(Config.SECOND_HAND_COLOR));
+        assertEquals(Arrays.asList(Collections.singletonList(Config.SECOND_HAND_COLOR)), mWatchListener.mChanges);
+    }
+
+    @Test
+    public void burstIsCoalescedIntoOneWrite() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            mPhone.setMotion(i % (Config.MOTION_SPRING + 1));
+            idle(10);
+        }
+        idle(SETTLE_MS);
+        assertEquals(1, mTransports[0].getPutCount());
+        assertEquals(mPhone.getMotion(), mWatch.getMotion());
+    }
+
+    @Test
+    public void disconnectedWatchCatchesUpOnConnect() throws Exception {
+        mWatch.disconnect();
+        mPhone.setMotion(Config.MOTION_SPRING);
+        idle(SETTLE_MS);
+        assertNotEquals(Config.MOTION_SPRING, mWatch.getMotion());
+        mWatch.connect();
+        idle(0);
+        assertEquals(Config.MOTION_SPRING, mWatch.getMotion());
+    }
+
+    @Test
+    public void concurrentOfflineEditsConverge() throws Exception {
+        mPhone.disconnect();
+        mWatch.disconnect();
+        // 両方で一つずつ変えるので、同じ版で値が違うものができる
+        mPhone.setColor(Config.SECOND_HAND_COLOR, 0xffff0000);
+        mWatch.setMotion(Config.MOTION_SPRING);
+        assertEquals(mPhone.getSnapshot().getVersion(), mWatch.getSnapshot().getVersion());
+        idle(SETTLE_MS);
+        mPhone.connect();
+        mWatch.connect();
+        idle(SETTLE_MS * 2);
+        ConfigSnapshot phone = mPhone.getSnapshot();
+        ConfigSnapshot watch = mWatch.getSnapshot();
+        assertEquals(Collections.<ConfigKey>emptyList(), phone.diff(watch));
+        assertEquals(phone.getVersion(), watch.getVersion());
+        assertEquals(phone.getWriter(), watch.getWriter());
+    }
+
+    @Test
+    public void lostWritesAreRetried() throws Exception {
+        connect(0.5f);
+        for (int i = 0; i < 20; i++) {
+            mPhone.setColor(Config.SECOND_HAND_COLOR, 0xff000000 | i);
+            idle(SETTLE_MS);
+        }
+        // 失敗しても間隔を空けて送り直すので、最後には届いている
+        idle(ConfigWriter.MAX_RETRY_DELAY_MS * 4);
+        assertTrue(mTransports[0].getLostCount() > 0);
+        assertEquals(0xff000000 | 19, mWatch.getSnapshot().getColor(Config.SECOND_HAND_COLOR));
+    }
+}
@@ -0,0 +1,108 @@
+package org.firespeed.both;
+
+import android.content.Context;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * 設定を続けざまに変えた時に、最後の値が相手に届くまでの時間と書き込みの回数を測る.
+ * 経路は{@link LoopbackTransport}で遅延と失敗を変えて試す. 時間はRobolectricの時計で進めるので、
+ * 遅延は模擬の値になる. 処理にかかった実時間は変更1回あたりで出す.
+ * 結果は標準出力に出す.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ConfigPropagationBenchmark {
+    private static final long[] LATENCIES_MS = {0, 20, 100};
+    private static final float[] LOSS_RATES = {0f, 0.1f};
+    private static final int BURSTS = 200;
+    private static final int CHANGES_PER_BURST = 5;
+    private static final long CHANGE_INTERVAL_MS = 10;
+    private static final long BURST_INTERVAL_MS = 2000;
+    private static final long STEP_MS = 5;
+
+    /**
+     * 腕時計側で、待っている色が届いた時刻を記録する.
+     */
+    private static class ArrivalListener implements Config.OnConfigChangedListener {
+        int mExpectedColor;
+        long mArrivedAt = -1;
+
+        @Override
+        public void onConfigChanged(Config config, ConfigSnapshot snapshot, List<ConfigKey> changedKeys) {
+            if (mArrivedAt < 0 && snapshot.getColor(Config.SECOND_HAND_COLOR) == mExpectedColor) {
+                mArrivedAt = SystemClock.uptimeMillis();
+            }
+        }
+    }
+
+    private static void idle(long ms) {
+        shadowOf(Looper.getMainLooper()).idleFor(ms, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void burstyUpdates() throws Exception {
+        Context context = RuntimeEnvironment.application;
+        for (float lossRate : LOSS_RATES) {
+            for (long latencyMs : LATENCIES_MS) {
+                LoopbackTransport[] transports = LoopbackTransport.createPair(Looper.getMainLooper(), latencyMs, lossRate, 1);
+                ArrivalListener listener = new ArrivalListener();
+                String name = "bench" + latencyMs + "_" + lossRate;
+                Config phone = new Config(new ConfigStore(context, name + "phone"), transports[0], null);
+                Config watch = new Config(new ConfigStore(context, name + "watch"), transports[1], listener);
+                phone.connect();
+                watch.connect();
+                idle(0);
+
+                long[] latencies = new long[BURSTS];
+                long cpuNanos = 0;
+                int color = 0xff000000;
+                long simulatedStart = SystemClock.uptimeMillis();
+                for (int burst = 0; burst < BURSTS; burst++) {
+                    long burstStart = SystemClock.uptimeMillis();
+                    for (int i = 0; i < CHANGES_PER_BURST; i++) {
+                        color++;
+                        long begin = System.nanoTime();
+                        phone.setColor(Config.SECOND_HAND_COLOR, color);
+                        cpuNanos += System.nanoTime() - begin;
+                        idle(CHANGE_INTERVAL_MS);
+                    }
+                    long lastChange = SystemClock.uptimeMillis();
+                    listener.mExpectedColor = color;
+                    listener.mArrivedAt = -1;
+                    long begin = System.nanoTime();
+                    while (listener.mArrivedAt < 0 && SystemClock.uptimeMillis() - burstStart < BURST_INTERVAL_MS * 10) {
+                        idle(STEP_MS);
+                    }
+                    cpuNanos += System.nanoTime() - begin;
+                    assertTrue("burst " + burst + " was not delivered", listener.mArrivedAt >= 0);
+                    latencies[burst] = listener.mArrivedAt - lastChange;
+                    idle(Math.max(0, BURST_INTERVAL_MS - (SystemClock.uptimeMillis() - burstStart)));
+                }
+                long simulatedMs = SystemClock.uptimeMillis() - simulatedStart;
+                int changes = BURSTS * CHANGES_PER_BURST;
+
+                Arrays.sort(latencies);
+                System.out.println(String.format(
+                        "latency %3dms loss %3.0f%%  p50 %5dms  p99 %5dms  puts/change %.2f  %6.1f changes/s  %8.1f us/change",
+                        latencyMs, lossRate * 100, latencies[BURSTS / 2], latencies[BURSTS * 99 / 100],
+                        transports[0].getPutCount() / (double) changes, changes * 1000.0 / simulatedMs,
+                        cpuNanos / 1e3 / changes));
+                assertEquals(color, watch.getSnapshot().getColor(Config.SECOND_HAND_COLOR));
+                phone.disconnect();
+                watch.disconnect();
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package org.firespeed.both;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class ConfigSnapshotTest {
+    private static final ConfigKey FLAG = ConfigKey.booleanKey("TEST_FLAG", true);
+    private static final ConfigKey COUNT = ConfigKey.intKey("TEST_COUNT", 3);
+    private static final ConfigKey MODE = ConfigKey.enumKey("TEST_MODE", 3, 1);
+    private static final ConfigKey COLOR = ConfigKey.colorKey("TEST_COLOR", 0xff00ff00);
+
+    @Test
+    public void defaults() throws Exception {
+        ConfigSnapshot snapshot = ConfigSnapshot.defaults();
+        assertTrue(snapshot.getBoolean(FLAG));
+        assertEquals(3, snapshot.getInt(COUNT));
+        assertEquals(1, snapshot.getInt(MODE));
+        assertEquals(0xff00ff00, snapshot.getColor(COLOR));
+        assertEquals(0, snapshot.getVersion());
+    }
+
+    @Test
+    public void withCopiesOnWrite() throws Exception {
+        ConfigSnapshot before = ConfigSnapshot.defaults();
+        ConfigSnapshot after = before.with(COLOR, 0xffff0000, 1);
+        assertEquals(0xff00ff00, before.getColor(COLOR));
+        assertEquals(0xffff0000, after.getColor(COLOR));
+        assertEquals(1, after.getVersion());
+        assertSame(after, after.with(COLOR, 0xffff0000, 1));
+    }
+
+    @Test
+    public void diffReturnsOnlyChangedKeys() throws Exception {
+        ConfigSnapshot before = ConfigSnapshot.defaults();
+        ConfigSnapshot after = before.with(MODE, 2, 1).with(COUNT, 5, 2);
+        assertEquals(Arrays.asList(COUNT, MODE), before.diff(after));
+        assertEquals(Collections.<ConfigKey>emptyList(), after.with(FLAG, 1, 3).diff(after));
+    }
+
+    @Test
+    public void keyValidatesRange() throws Exception {
+        assertTrue(MODE.isValid(2));
+        assertFalse(MODE.isValid(3));
+        assertFalse(MODE.isValid(-1));
+        assertFalse(FLAG.isValid(2));
+        assertTrue(COUNT.isValid(-100));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void duplicateKeyIsRejected() throws Exception {
+        ConfigKey.intKey("TEST_COUNT", 0);
+    }
+}
@@ -0,0 +1,137 @@
+package org.firespeed.both;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * 関係のないDataItemが大量にある状態で、つなぎ直すたびに設定を読み込む時間を比べる.
+ * 全件を取って探すやり方と、パスで絞って中身が同じなら読み飛ばすやり方.
+ * 結果は標準出力に出す.
+ */
+public class ConfigSyncBenchmark {
+    private static final String PATH = "/config";
+    private static final int UNRELATED_ITEMS = 5000;
+    private static final int RECONNECTS = 1000;
+
+    /**
+     * DataApiの代わり. 全件取得とパス指定の取得だけを持つ.
+     */
+    private static class FakeDataSource {
+        private final List<String> mPaths = new ArrayList<>();
+        private final Map<String, byte[]> mItems = new HashMap<>();
+
+        void put(String path, byte[] data) {
+            if (mItems.put(path, data) == null) {
+                mPaths.add(path);
+            }
+        }
+
+        List<String> getPaths() {
+            return mPaths;
+        }
+
+        byte[] get(String path) {
+            return mItems.get(path);
+        }
+    }
+
+    /**
+     * DataMapの代わりに、キーと値の組を書き出す.
+     */
+    private static byte[] serialize(int motion, long version, int padding) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeUTF("MOTION");
+        data.writeInt(motion);
+        data.writeUTF("VERSION");
+        data.writeLong(version);
+        for (int i = 0; i < padding; i++) {
+            data.writeUTF("KEY" + i);
+            data.writeInt(i);
+        }
+        data.close();
+        return out.toByteArray();
+    }
+
+    private static Map<String, Object> deserialize(byte[] bytes) throws IOException {
+        Map<String, Object> map = new HashMap<>();
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(bytes));
+        map.put(data.readUTF(), data.readInt());
+        map.put(data.readUTF(), data.readLong());
+        while (data.available() > 0) {
+            map.put(data.readUTF(), data.readInt());
+        }
+        return map;
+    }
+
+    private static FakeDataSource createSource() throws IOException {
+        FakeDataSource source = new FakeDataSource();
+        for (int i = 0; i < UNRELATED_ITEMS; i++) {
+            source.put("/item/" + i, serialize(i, i, 8));
+        }
+        source.put(PATH, serialize(Config.MOTION_QUADRATIC_EASE, 1, 8));
+        return source;
+    }
+
+    @Test
+    public void filterSkipsUnchangedItems() throws Exception {
+        ConfigSyncFilter filter = new ConfigSyncFilter(PATH);
+        byte[] first = serialize(Config.MOTION_SMOOTH, 1, 0);
+        assertFalse(filter.accept("/other", first));
+        assertTrue(filter.accept(PATH, first));
+        assertFalse(filter.accept(PATH, first.clone()));
+        assertTrue(filter.accept(PATH, serialize(Config.MOTION_TICK, 2, 0)));
+        assertEquals(2, filter.getAcceptedCount());
+        assertEquals(1, filter.getSkippedCount());
+        filter.reset();
+        assertTrue(filter.accept(PATH, serialize(Config.MOTION_TICK, 2, 0)));
+    }
+
+    @Test
+    public void reconnect() throws Exception {
+        FakeDataSource source = createSource();
+
+        // 全件を取ってパスを比べ、見つけたものは毎回読み込む
+        int dispatched = 0;
+        long begin = System.nanoTime();
+        for (int i = 0; i < RECONNECTS; i++) {
+            for (String path : source.getPaths()) {
+                if (path.equals(PATH)) {
+                    dispatched += deserialize(source.get(path)).size() > 0 ? 1 : 0;
+                }
+            }
+        }
+        long scanNanos = System.nanoTime() - begin;
+        assertEquals(RECONNECTS, dispatched);
+
+        // パスで絞り、前回と同じ中身なら読み込まない
+        ConfigSyncFilter filter = new ConfigSyncFilter(PATH);
+        dispatched = 0;
+        begin = System.nanoTime();
+        for (int i = 0; i < RECONNECTS; i++) {
+            byte[] data = source.get(PATH);
+            if (filter.accept(PATH, data)) {
+                dispatched += deserialize(data).size() > 0 ? 1 : 0;
+            }
+        }
+        long filteredNanos = System.nanoTime() - begin;
+        assertEquals(1, dispatched);
+        assertEquals(RECONNECTS - 1, filter.getSkippedCount());
+
+        System.out.println(String.format("sync/scan      %6d items  %8.3f us/connect",
+                UNRELATED_ITEMS + 1, scanNanos / 1e3 / RECONNECTS));
+        System.out.println(String.format("sync/filtered  %6d items  %8.3f us/connect",
+                UNRELATED_ITEMS + 1, filteredNanos / 1e3 / RECONNECTS));
+    }
+}
@@ -0,0 +1,179 @@
+package org.firespeed.both;
+
+import android.os.Looper;
+
+import com.google.android.gms.wearable.DataMap;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+public class ConfigWriterTest {
+    /**
+     * 送ったDataMapを覚えておくだけの経路. 結果は{@link #complete}で返す.
+     */
+    private static class RecordingTransport implements ConfigTransport {
+        final List<DataMap> mPuts = new ArrayList<>();
+        final List<PutCallback> mCallbacks = new ArrayList<>();
+        boolean mConnected = true;
+
+        @Override
+        public void connect(Receiver receiver) {
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public boolean isConnected() {
+            return mConnected;
+        }
+
+        @Override
+        public void put(DataMap dataMap, PutCallback callback) {
+            mPuts.add(dataMap);
+            mCallbacks.add(callback);
+        }
+
+        void complete(int index, boolean success) {
+            mCallbacks.get(index).onPutResult(success);
+        }
+    }
+
+    private RecordingTransport mTransport;
+    private ConfigWriter mWriter;
+
+    @Before
+    public void setUp() {
+        mTransport = new RecordingTransport();
+        mWriter = new ConfigWriter(mTransport);
+    }
+
+    private static void idle(long ms) {
+        shadowOf(Looper.getMainLooper()).idleFor(ms, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void changesWithinDebounceAreMerged() {
+        mWriter.putInt("a", 1);
+        idle(ConfigWriter.DEFAULT_DEBOUNCE_MS / 2);
+        mWriter.putInt("b", 2);
+        mWriter.putInt("a", 3);
+        idle(ConfigWriter.DEFAULT_DEBOUNCE_MS / 2);
+        assertTrue(mTransport.mPuts.isEmpty());
+        idle(ConfigWriter.DEFAULT_DEBOUNCE_MS);
+        assertEquals(1, mTransport.mPuts.size());
+        assertEquals(3, mTransport.mPuts.get(0).getInt("a"));
+        assertEquals(2, mTransport.mPuts.get(0).getInt("b"));
+        assertEquals(1, mWriter.getWriteCount());
+        assertEquals(0, mWriter.getSuppressedCount());
+    }
+
+    @Test
+    public void acknowledgedValuesAreNotSent() {
+        DataMap remote = new DataMap();
+        remote.putInt("a", 1);
+        mWriter.onRemoteDataMap(remote);
+        mWriter.putInt("a", 1);
+        idle(ConfigWriter.DEFAULT_DEBOUNCE_MS);
+        assertTrue(mTransport.mPuts.isEmpty());
+        assertEquals(1, mWriter.getSuppressedCount());
+
+        // 変えてすぐに戻した場合も送らない
+        mWriter.putInt("a", 2);
+        mWriter.putInt("a", 1);
+        idle(ConfigWriter.DEFAULT_DEBOUNCE_MS);
+        assertTrue(mTransport.mPuts.isEmpty());
+        assertEquals(2, mWriter.getSuppressedCount());
+    }
+
+    @Test
+    public void sentValuesBecomeAcknowledged() {
+        mWriter.putInt("a", 1);
+        idle(ConfigWriter.DEFAULT_DEBOUNCE_MS);
+        mTransport.complete(0, true);
+        mWriter.putInt("a", 1);
+        idle(ConfigWriter.DEFAULT_DEBOUNCE_MS);
+        assertEquals(1, mTransport.mPuts.size());
+        assertEquals(1, mWriter.getSuppressedCount());
+    }
+
+    @Test
+    public void firstWriteCarriesUnchangedLocalValues() {
+        DataMap local = new DataMap();
+        local.putInt("a", 1);
+        local.putInt("b", 2);
+        mWriter = new ConfigWriter(mTransport, local);
+        // 相手から何も届いていなくても、変えていない項目を消さない
+        mWriter.putInt("b", 3);
+        idle(ConfigWriter.DEFAULT_DEBOUNCE_MS);
+        assertEquals(1, mTransport.mPuts.size());
+        assertEquals(1, mTransport.mPuts.get(0).getInt("a"));
+        assertEquals(3, mTransport.mPuts.get(0).getInt("b"));
+    }
+
+    @Test
+    public void failedWritesBackOff() {
+        mWriter.putInt("a", 1);
+        idle(ConfigWriter.DEFAULT_DEBOUNCE_MS);
+        mTransport.complete(0, false);
+        // 送り直しは待ち時間の後で、失敗が続くたびに倍になる
+        idle(ConfigWriter.INITIAL_RETRY_DELAY_MS - 1);
+        assertEquals(1, mTransport.mPuts.size());
+        idle(1);
+        assertEquals(2, mTransport.mPuts.size());
+        assertEquals(1, mTransport.mPuts.get(1).getInt("a"));
+        mTransport.complete(1, false);
+        idle(ConfigWriter.INITIAL_RETRY_DELAY_MS * 2 - 1);
+        assertEquals(2, mTransport.mPuts.size());
+        idle(1);
+        assertEquals(3, mTransport.mPuts.size());
+        assertEquals(2, mWriter.getFailedCount());
+
+        // 成功したら最初の待ち時間に戻る
+        mTransport.complete(2, true);
+        mWriter.putInt("a", 2);
+        idle(ConfigWriter.DEFAULT_DEBOUNCE_MS);
+        mTransport.complete(3, false);
+        idle(ConfigWriter.INITIAL_RETRY_DELAY_MS);
+        assertEquals(5, mTransport.mPuts.size());
+        assertEquals(0, mWriter.getSuppressedCount());
+    }
+
+    @Test
+    public void retryDelayIsCapped() {
+        mWriter.putInt("a", 1);
+        idle(ConfigWriter.DEFAULT_DEBOUNCE_MS);
+        for (int i = 0; i < 12; i++) {
+            mTransport.complete(i, false);
+            idle(ConfigWriter.MAX_RETRY_DELAY_MS);
+            assertEquals(i + 2, mTransport.mPuts.size());
+        }
+    }
+
+    @Test
+    public void flushDoesNothingWhileDisconnected() {
+        mTransport.mConnected = false;
+        mWriter.putInt("a", 1);
+        idle(ConfigWriter.DEFAULT_DEBOUNCE_MS);
+        mWriter.flush();
+        assertTrue(mTransport.mPuts.isEmpty());
+        assertEquals(0, mWriter.getWriteCount());
+
+        // つながったら取っておいた変更を送る
+        mTransport.mConnected = true;
+        mWriter.flush();
+        assertEquals(1, mTransport.mPuts.size());
+        assertEquals(1, mTransport.mPuts.get(0).getInt("a"));
+    }
+}
@@ -0,0 +1,165 @@
+package org.firespeed.both;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * 腕時計が画面の情報を送り、スマートフォンが拡大縮小した画像を返すまでを
+ * {@link LoopbackSpriteChannel}でつないで確かめる.
+ */
+@RunWith(RobolectricTestRunner.class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class SpritePipelineTest {
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    /**
+     * 腕時計の代わり. 届いた画像を読み込んでおく.
+     */
+    private static class WatchListener implements SpriteChannel.Listener {
+        final List<SpriteSheet> mSheets = new ArrayList<>();
+        final List<String> mVersions = new ArrayList<>();
+
+        @Override
+        public void onDisplaySpec(DisplaySpec spec) {
+        }
+
+        @Override
+        public boolean hasSpriteSheet(DisplaySpec spec, String version) {
+            return mVersions.contains(version);
+        }
+
+        @Override
+        public void onSpriteSheet(DisplaySpec spec, String version, InputStream stream) {
+            mVersions.add(version);
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int length;
+                while ((length = stream.read(buffer)) > 0) {
+                    out.write(buffer, 0, length);
+                }
+                SpriteSheet sheet = SpriteSheet.wrap(ByteBuffer.wrap(out.toByteArray()));
+                assertEquals(spec, sheet.getSpec());
+                mSheets.add(sheet);
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    private LoopbackSpriteChannel[] mChannels;
+    private SpritePublisher mPublisher;
+
+    @Before
+    public void setUp() throws Exception {
+        mChannels = LoopbackSpriteChannel.createPair(DIRECT);
+        mPublisher = new SpritePublisher(RuntimeEnvironment.application.getResources(), mChannels[0], DIRECT, 0);
+        mPublisher.start();
+    }
+
+    @Test
+    public void watchReceivesScaledSprites() throws Exception {
+        WatchListener watch = new WatchListener();
+        mChannels[1].connect(watch);
+        mChannels[1].reportDisplay(new DisplaySpec(320, 320, true));
+
+        assertEquals(1, watch.mSheets.size());
+        SpriteSheet sheet = watch.mSheets.get(0);
+        SpriteSheet.Entry background = sheet.find(SpriteSheet.ID_BACKGROUND, SpriteSheet.STEP_NONE);
+        assertEquals(320, background.width);
+        assertEquals(320, background.height);
+        assertEquals(SpriteSheet.BYTES_ARGB_8888, background.bytesPerPixel);
+        // 丸い画面では見えない四隅を落としてある
+        ByteBuffer pixels = background.getPixels();
+        assertEquals(0, pixels.get(3));
+        assertEquals((byte) 0xff, pixels.get((160 * 320 + 160) * 4 + 3));
+        SpriteSheet.Entry minute = sheet.find(SpriteSheet.ID_MINUTE, SpriteSheet.STEP_NONE);
+        assertEquals(28 * 320 / 512f, minute.width, 1f);
+        assertEquals(SpriteSheet.BYTES_ALPHA_8,
+                sheet.find(SpriteSheet.ID_MINUTE_AMBIENT, SpriteSheet.STEP_NONE).bytesPerPixel);
+        assertNotNull(sheet.find(SpriteSheet.ID_HOUR, SpriteSheet.STEP_NONE));
+        assertNotNull(sheet.find(SpriteSheet.ID_HOUR_AMBIENT, SpriteSheet.STEP_NONE));
+    }
+
+    @Test
+    public void sameDisplayIsRenderedOnce() throws Exception {
+        WatchListener watch = new WatchListener();
+        mChannels[1].connect(watch);
+        DisplaySpec spec = new DisplaySpec(360, 326, false);
+        mChannels[1].reportDisplay(spec);
+        mChannels[1].reportDisplay(new DisplaySpec(360, 326, false));
+        assertEquals(1, mPublisher.getRenderCount());
+        assertEquals(1, mChannels[0].getSheetCount());
+
+        mChannels[1].reportDisplay(new DisplaySpec(454, 454, true));
+        assertEquals(2, mPublisher.getRenderCount());
+        assertEquals(2, watch.mSheets.size());
+    }
+
+    @Test
+    public void watchConnectingLaterGetsLastSheet() throws Exception {
+        mChannels[1].reportDisplay(new DisplaySpec(390, 390, true));
+        WatchListener watch = new WatchListener();
+        mChannels[1].connect(watch);
+        assertEquals(1, watch.mSheets.size());
+        assertEquals(new DisplaySpec(390, 390, true), watch.mSheets.get(0).getSpec());
+    }
+
+    @Test
+    public void storedSheetIsNotReadAgainOnReconnect() throws Exception {
+        WatchListener watch = new WatchListener();
+        mChannels[1].connect(watch);
+        mChannels[1].reportDisplay(new DisplaySpec(320, 320, true));
+        assertEquals(1, watch.mSheets.size());
+        // つなぎ直すと同じ画像がもう一度届くが、持っているので読まない
+        mChannels[1].disconnect();
+        mChannels[1].connect(watch);
+        assertEquals(1, watch.mSheets.size());
+
+        // 別の画像が来れば読む
+        mChannels[1].reportDisplay(new DisplaySpec(454, 454, true));
+        assertEquals(2, watch.mSheets.size());
+    }
+
+    @Test
+    public void squareBackgroundIsCroppedToScreen() throws Exception {
+        WatchListener watch = new WatchListener();
+        mChannels[1].connect(watch);
+        mChannels[1].reportDisplay(new DisplaySpec(320, 290, false));
+        SpriteSheet.Entry background = watch.mSheets.get(0).find(SpriteSheet.ID_BACKGROUND, SpriteSheet.STEP_NONE);
+        assertEquals(320, background.width);
+        assertEquals(290, background.height);
+    }
+
+    @Test
+    public void rotatedSpritesAreOptional() throws Exception {
+        DisplaySpec spec = new DisplaySpec(320, 320, true);
+        SpriteSheet plain = SpriteSheet.wrap(ByteBuffer.wrap(
+                SpriteRenderer.render(RuntimeEnvironment.application.getResources(), spec, 0)));
+        SpriteSheet rotated = SpriteSheet.wrap(ByteBuffer.wrap(
+                SpriteRenderer.render(RuntimeEnvironment.application.getResources(), spec, 12)));
+        assertEquals(5, plain.getEntryCount());
+        assertEquals(5 + 12 * 2, rotated.getEntryCount());
+        SpriteSheet.Entry sprite = rotated.find(SpriteSheet.ID_MINUTE, 3);
+        assertEquals(sprite.width, sprite.height);
+    }
+}
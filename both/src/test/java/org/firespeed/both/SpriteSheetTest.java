@@ -0,0 +1,88 @@
+package org.firespeed.both;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class SpriteSheetTest {
+    private static ByteBuffer pixels(int length, int seed) {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        for (int i = 0; i < length; i++) {
+            buffer.put((byte) (i * 31 + seed));
+        }
+        buffer.rewind();
+        return buffer;
+    }
+
+    private static byte[] write(DisplaySpec spec) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new SpriteSheet.Writer(spec)
+                .add(SpriteSheet.ID_BACKGROUND, SpriteSheet.STEP_NONE, 3, 2, SpriteSheet.BYTES_ARGB_8888, pixels(24, 1))
+                .add(SpriteSheet.ID_HOUR_AMBIENT, SpriteSheet.STEP_NONE, 5, 3, SpriteSheet.BYTES_ALPHA_8, pixels(15, 2))
+                .add(SpriteSheet.ID_MINUTE, 7, 2, 2, SpriteSheet.BYTES_ARGB_8888, pixels(16, 3))
+                .writeTo(out);
+        return out.toByteArray();
+    }
+
+    private static void assertSheet(SpriteSheet sheet, DisplaySpec spec) {
+        assertEquals(spec, sheet.getSpec());
+        assertEquals(3, sheet.getEntryCount());
+        SpriteSheet.Entry ambient = sheet.find(SpriteSheet.ID_HOUR_AMBIENT, SpriteSheet.STEP_NONE);
+        assertEquals(5, ambient.width);
+        assertEquals(3, ambient.height);
+        assertEquals(SpriteSheet.BYTES_ALPHA_8, ambient.bytesPerPixel);
+        assertEquals(pixels(15, 2), ambient.getPixels());
+        assertEquals(pixels(16, 3), sheet.find(SpriteSheet.ID_MINUTE, 7).getPixels());
+        assertNull(sheet.find(SpriteSheet.ID_MINUTE, SpriteSheet.STEP_NONE));
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        DisplaySpec spec = new DisplaySpec(320, 290, false);
+        assertSheet(SpriteSheet.wrap(ByteBuffer.wrap(write(spec))), spec);
+    }
+
+    @Test
+    public void mapFile() throws Exception {
+        DisplaySpec spec = new DisplaySpec(454, 454, true);
+        File file = File.createTempFile("sprites", ".bin");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            out.write(write(spec));
+            out.close();
+            SpriteSheet sheet = SpriteSheet.map(file);
+            assertSheet(sheet, spec);
+            // 読み出すたびに先頭から読める
+            sheet.find(SpriteSheet.ID_MINUTE, 7).getPixels().get();
+            assertEquals(16, sheet.find(SpriteSheet.ID_MINUTE, 7).getPixels().remaining());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherData() throws Exception {
+        SpriteSheet.wrap(ByteBuffer.wrap(new byte[64]));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedData() throws Exception {
+        byte[] data = write(new DisplaySpec(320, 320, true));
+        ByteBuffer truncated = ByteBuffer.wrap(data, 0, data.length - 20).slice();
+        SpriteSheet.wrap(truncated);
+    }
+
+    @Test
+    public void displaySpecScale() throws Exception {
+        DisplaySpec spec = new DisplaySpec(320, 290, false);
+        assertEquals(320 / 512f, spec.getScale(), 0f);
+        assertEquals(0f, spec.getBackgroundLeft(), 0f);
+        assertEquals(-15f, spec.getBackgroundTop(), 0f);
+    }
+}
@@ -7,24 +7,32 @@ import android.widget.CheckBox;
 import android.widget.CompoundButton;
 
 import org.firespeed.both.Config;
+import org.firespeed.both.ConfigKey;
+import org.firespeed.both.ConfigSnapshot;
+
+import java.util.List;
 
 public class MainActivity extends AppCompatActivity {
     private Config mConfig;
+    private Config.OnConfigChangedListener mConfigChangedListener;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
         final CheckBox smooth = (CheckBox)findViewById(R.id.smooth);
-        mConfig = new Config(this, new Config.OnConfigChangedListener() {
+        mConfigChangedListener = new Config.OnConfigChangedListener() {
             @Override
-            public void onConfigChanged(Config config) {
+            public void onConfigChanged(Config config, ConfigSnapshot snapshot, List<ConfigKey> changedKeys) {
                 Log.d("Config", String.valueOf(config.isSmooth()));
                 if(mConfig.isSmooth() != smooth.isChecked()) {
                     smooth.setChecked(config.isSmooth());
                 }
             }
-        });
+        };
+        mConfig = new Config(this, mConfigChangedListener);
+        // 保存済みの設定をつながる前から表示しておく
+        smooth.setChecked(mConfig.isSmooth());
         smooth.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
             @Override
             public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
@@ -46,4 +54,11 @@ public class MainActivity extends AppCompatActivity {
         super.onPause();
         mConfig.disconnect();
     }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // リスナーは強参照で持たれているので外しておく
+        mConfig.removeOnConfigChangedListener(mConfigChangedListener);
+    }
 }
@@ -0,0 +1,99 @@
+package org.firespeed.myapplication;
+
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.DataEvent;
+import com.google.android.gms.wearable.DataEventBuffer;
+import com.google.android.gms.wearable.Wearable;
+import com.google.android.gms.wearable.WearableListenerService;
+
+import org.firespeed.both.DisplaySpec;
+import org.firespeed.both.SpriteRenderer;
+import org.firespeed.both.WearableSpriteChannel;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 腕時計から届いた画面の情報に合わせて背景と針を拡大縮小し、送り返す.
+ * アプリを開いていなくても答えられるようにサービスで受ける.
+ * 最後に送った画面は保存しておき、同じ画面に対しては作り直さない.
+ * コールバックはサービスのワーカースレッドで一つずつ呼ばれるので、ここで待ってよい.
+ */
+public class SpritePublisherService extends WearableListenerService {
+    private static final String TAG = "SpritePublisherService";
+    private static final String PREFERENCES_NAME = "org.firespeed.myapplication.sprites";
+    private static final String KEY_WIDTH = "WIDTH";
+    private static final String KEY_HEIGHT = "HEIGHT";
+    private static final String KEY_ROUND = "ROUND";
+    private static final long CONNECT_TIMEOUT_MS = 30000;
+
+    @Override
+    public void onDataChanged(DataEventBuffer dataEvents) {
+        DisplaySpec spec = null;
+        for (DataEvent event : dataEvents) {
+            if (event.getType() == DataEvent.TYPE_CHANGED) {
+                DisplaySpec reported = WearableSpriteChannel.getDisplaySpec(event.getDataItem());
+                if (reported != null) {
+                    // まとめて届いた時は最後のものだけ作る
+                    spec = reported;
+                }
+            }
+        }
+        if (spec == null || spec.equals(loadPublished())) {
+            return;
+        }
+        byte[] sheet;
+        try {
+            sheet = SpriteRenderer.render(getResources(), spec, 0);
+        } catch (IOException e) {
+            Log.w(TAG, "failed to render sprites for " + spec, e);
+            return;
+        }
+        GoogleApiClient client = new GoogleApiClient.Builder(this)
+                .addApi(Wearable.API)
+                .build();
+        ConnectionResult result = client.blockingConnect(CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        if (!result.isSuccess()) {
+            Log.w(TAG, "failed to connect: " + result);
+            return;
+        }
+        try {
+            DataApi.DataItemResult put = Wearable.DataApi.putDataItem(client,
+                    WearableSpriteChannel.createSheetRequest(spec, sheet)).await();
+            if (put.getStatus().isSuccess()) {
+                savePublished(spec);
+            }
+        } finally {
+            client.disconnect();
+        }
+    }
+
+    private SharedPreferences getPreferences() {
+        return getSharedPreferences(PREFERENCES_NAME, MODE_PRIVATE);
+    }
+
+    /**
+     * 最後に送った画面. 送ったことがなければnull.
+     */
+    private DisplaySpec loadPublished() {
+        SharedPreferences preferences = getPreferences();
+        if (!preferences.contains(KEY_WIDTH)) {
+            return null;
+        }
+        return new DisplaySpec(preferences.getInt(KEY_WIDTH, 0), preferences.getInt(KEY_HEIGHT, 0),
+                preferences.getBoolean(KEY_ROUND, false));
+    }
+
+    private void savePublished(DisplaySpec spec) {
+        getPreferences().edit()
+                .putInt(KEY_WIDTH, spec.width)
+                .putInt(KEY_HEIGHT, spec.height)
+                .putBoolean(KEY_ROUND, spec.round)
+                .apply();
+    }
+}
@@ -0,0 +1,167 @@
+package org.firespeed.myapplication;
+
+import android.content.res.Resources;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+
+import org.firespeed.both.Config;
+import org.firespeed.both.SpriteSheet;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * {@link AssetSet}の組み立てをワーカースレッドで行う.
+ * 描画スレッドは{@link #poll()}で出来上がった組を受け取るまで、手元の組か代わりの描画で凌ぐ.
+ */
+public class AssetLoader {
+    public interface OnAssetsReadyListener {
+        void onAssetsReady();
+    }
+
+    /**
+     * 出来上がった組と、それを依頼した時の世代.
+     */
+    private static final class Ready {
+        final AssetSet assets;
+        final int generation;
+
+        Ready(AssetSet assets, int generation) {
+            this.assets = assets;
+            this.generation = generation;
+        }
+    }
+
+    private final Resources mResources;
+    private final int mSpriteSteps;
+    private final OnAssetsReadyListener mListener;
+    private final PrerenderedSprites mSprites;
+    private final HandlerThread mThread;
+    private final Handler mWorkerHandler;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicReference<Ready> mReady = new AtomicReference<>();
+    private volatile int mGeneration;
+    private int mRequestedWidth;
+    private int mRequestedHeight;
+    private boolean mRequestedRound;
+    private int mHandStyle = Config.HAND_STYLE_BITMAP;
+    private int mRequestedHandStyle = Config.HAND_STYLE_BITMAP;
+
+    public AssetLoader(Resources resources, int spriteSteps, OnAssetsReadyListener listener) {
+        this(resources, spriteSteps, null, listener);
+    }
+
+    /**
+     * @param sprites スマートフォンで拡大縮小済みの画像の置き場. nullなら常に自分で拡大縮小する
+     */
+    public AssetLoader(Resources resources, int spriteSteps, PrerenderedSprites sprites, OnAssetsReadyListener listener) {
+        mResources = resources;
+        mSprites = sprites;
+        mSpriteSteps = spriteSteps;
+        mListener = listener;
+        mThread = new HandlerThread("AssetLoader", Process.THREAD_PRIORITY_BACKGROUND);
+        mThread.start();
+        mWorkerHandler = new Handler(mThread.getLooper());
+    }
+
+    /**
+     * 針の描き方. 次の依頼から使う.
+     */
+    public void setHandStyle(int handStyle) {
+        mHandStyle = handStyle;
+    }
+
+    /**
+     * 指定した大きさと形の画面向けの組み立てを依頼する. 同じ画面向けに依頼中のものがあれば何もしない.
+     */
+    public void request(int width, int height, boolean round, float scale, float backgroundLeft, float backgroundTop) {
+        if (width == mRequestedWidth && height == mRequestedHeight && round == mRequestedRound
+                && mHandStyle == mRequestedHandStyle) {
+            return;
+        }
+        reload(width, height, round, scale, backgroundLeft, backgroundTop);
+    }
+
+    /**
+     * 依頼中のものがあっても組み立て直す. ビットマップがrecycleされてしまった時に使う.
+     */
+    public void reload(final int width, final int height, final boolean round, final float scale,
+                       final float backgroundLeft, final float backgroundTop) {
+        mRequestedWidth = width;
+        mRequestedHeight = height;
+        mRequestedRound = round;
+        mRequestedHandStyle = mHandStyle;
+        final int handStyle = mHandStyle;
+        final int generation = ++mGeneration;
+        mWorkerHandler.removeCallbacksAndMessages(null);
+        mWorkerHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                SpriteSheet sheet = mSprites != null ? mSprites.open(width, height, round) : null;
+                AssetSet assets = AssetSet.create(mResources, width, height, round, scale,
+                        backgroundLeft, backgroundTop, mSpriteSteps, sheet, handStyle);
+                if (generation != mGeneration) {
+                    // 組み立て中に次の依頼が来たので捨てる
+                    assets.release();
+                    return;
+                }
+                Ready ready = new Ready(assets, generation);
+                release(mReady.getAndSet(ready));
+                if (generation != mGeneration && mReady.compareAndSet(ready, null)) {
+                    // 受け渡す間に次の依頼が来た
+                    assets.release();
+                    return;
+                }
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mListener.onAssetsReady();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * 出来上がった組があれば受け取る. なければnullを返す.
+     * 最後の依頼より前の依頼で組み立てたもの、今の画面や針の描き方に合わないものは捨てる.
+     */
+    public AssetSet poll() {
+        Ready ready = mReady.getAndSet(null);
+        if (ready == null) {
+            return null;
+        }
+        if (ready.generation != mGeneration || !ready.assets.isFor(mRequestedWidth, mRequestedHeight,
+                mRequestedRound, mRequestedHandStyle)) {
+            ready.assets.release();
+            return null;
+        }
+        return ready.assets;
+    }
+
+    private static void release(Ready ready) {
+        if (ready != null) {
+            ready.assets.release();
+        }
+    }
+
+    /**
+     * 依頼中の組み立てと受け取られていない組を捨てる. 次の{@link #request}は同じ画面向けでも組み立て直す.
+     */
+    public void cancel() {
+        mGeneration++;
+        mRequestedWidth = 0;
+        mRequestedHeight = 0;
+        mWorkerHandler.removeCallbacksAndMessages(null);
+        release(mReady.getAndSet(null));
+    }
+
+    public void quit() {
+        mGeneration++;
+        mWorkerHandler.removeCallbacksAndMessages(null);
+        mMainHandler.removeCallbacksAndMessages(null);
+        mThread.quit();
+        release(mReady.getAndSet(null));
+    }
+}
@@ -0,0 +1,258 @@
+package org.firespeed.myapplication;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+
+import org.firespeed.both.Config;
+import org.firespeed.both.DisplaySpec;
+import org.firespeed.both.SpriteRenderer;
+import org.firespeed.both.SpriteSheet;
+
+import java.nio.ByteBuffer;
+
+/**
+ * ある画面サイズ向けに拡大縮小を済ませた背景と針の組.
+ * ワーカースレッドで組み立て、描画スレッドへはまとめて受け渡す.
+ */
+public class AssetSet {
+    public final int width;
+    public final int height;
+    public final boolean round;
+    public final float scale;
+    public final float backgroundLeft;
+    public final float backgroundTop;
+    /**
+     * 画面の大きさに切り抜いた背景. 左上を画面の左上に合わせて描く. 丸い画面では四隅が透明になっている.
+     */
+    public final Bitmap background;
+    public final HandRenderer hour;
+    public final HandRenderer minute;
+    /**
+     * 針の描き方. Config.HAND_STYLE_で始まる値のどれか.
+     */
+    public final int handStyle;
+    /**
+     * 背景がプールから借りたものでなく、自分で持っているものかどうか.
+     */
+    private final boolean mOwnsBackground;
+
+    private AssetSet(int width, int height, boolean round, float scale, float backgroundLeft, float backgroundTop,
+                     Bitmap background, HandRenderer hour, HandRenderer minute, int handStyle,
+                     boolean ownsBackground) {
+        this.width = width;
+        this.height = height;
+        this.round = round;
+        this.scale = scale;
+        this.backgroundLeft = backgroundLeft;
+        this.backgroundTop = backgroundTop;
+        this.background = background;
+        this.hour = hour;
+        this.minute = minute;
+        this.handStyle = handStyle;
+        mOwnsBackground = ownsBackground;
+    }
+
+    /**
+     * 背景と針をデコード・拡大縮小する. 時間がかかるので描画スレッドからは呼ばないこと.
+     */
+    public static AssetSet create(Resources resources, int width, int height, float scale,
+                                  float backgroundLeft, float backgroundTop, int spriteSteps) {
+        return create(resources, width, height, false, scale, backgroundLeft, backgroundTop, spriteSteps, null);
+    }
+
+    /**
+     * スマートフォンで拡大縮小済みの画像があればそれを使い、なければ自分でデコード・拡大縮小する.
+     *
+     * @param round 丸い画面かどうか. 丸い画面では背景の見えない四隅を落としておく
+     * @param sheet この画面向けの画像. nullでもよい
+     */
+    public static AssetSet create(Resources resources, int width, int height, boolean round, float scale,
+                                  float backgroundLeft, float backgroundTop, int spriteSteps, SpriteSheet sheet) {
+        return create(resources, width, height, round, scale, backgroundLeft, backgroundTop, spriteSteps, sheet,
+                Config.HAND_STYLE_BITMAP);
+    }
+
+    /**
+     * @param handStyle 針の描き方. {@link Config#HAND_STYLE_VECTOR}ならパスで描き、針のビットマップは作らない
+     */
+    public static AssetSet create(Resources resources, int width, int height, boolean round, float scale,
+                                  float backgroundLeft, float backgroundTop, int spriteSteps, SpriteSheet sheet,
+                                  int handStyle) {
+        DisplaySpec spec = new DisplaySpec(width, height, round);
+        if (sheet != null && spec.equals(sheet.getSpec())) {
+            AssetSet assets = handStyle == Config.HAND_STYLE_VECTOR
+                    ? createVector(resources, sheet, scale, backgroundLeft, backgroundTop)
+                    : createFromSheet(sheet, scale, backgroundLeft, backgroundTop, spriteSteps);
+            if (assets != null) {
+                return assets;
+            }
+        }
+        String prescaled = PrescaledAssets.find(width, height, round);
+        if (prescaled != null) {
+            AssetSet assets = createFromAssets(resources, prescaled, spec, scale, backgroundLeft, backgroundTop,
+                    spriteSteps, handStyle);
+            if (assets != null) {
+                return assets;
+            }
+        }
+        // 用意していない画面なので、ここで拡大縮小する. 切り抜いた背景は同じ画面のEngineで共有する
+        Bitmap background = ScaledBitmapPool.getInstance().acquireDialBackground(resources, R.drawable.background,
+                scale, spec);
+        if (handStyle == Config.HAND_STYLE_VECTOR) {
+            int color = resources.getColor(R.color.analog_hands);
+            return new AssetSet(width, height, round, scale, backgroundLeft, backgroundTop, background,
+                    VectorHand.hour(scale, backgroundTop, backgroundLeft, color),
+                    VectorHand.minute(scale, backgroundTop, backgroundLeft, color), Config.HAND_STYLE_VECTOR, false);
+        }
+        Hand hour = new Hand(resources, R.drawable.hour, R.drawable.hour, scale, backgroundTop, backgroundLeft,
+                SpriteRenderer.HOUR_LEFT, SpriteRenderer.HOUR_TOP, SpriteRenderer.PIVOT_X, SpriteRenderer.PIVOT_Y);
+        Hand minute = new Hand(resources, R.drawable.minute, R.drawable.minute, scale, backgroundTop, backgroundLeft,
+                SpriteRenderer.MINUTE_LEFT, SpriteRenderer.MINUTE_TOP, SpriteRenderer.PIVOT_X, SpriteRenderer.PIVOT_Y);
+        hour.setSpriteMode(spriteSteps, HandSpriteCache.getInstance());
+        minute.setSpriteMode(spriteSteps, HandSpriteCache.getInstance());
+        return new AssetSet(width, height, round, scale, backgroundLeft, backgroundTop, background, hour, minute,
+                Config.HAND_STYLE_BITMAP, false);
+    }
+
+    /**
+     * 届いた画像の画素をそのままビットマップに写す. 足りないものがあればnullを返す.
+     * 回転済みの針が入っていても使わない. スプライトのキャッシュはメインスレッドの描画で使っており、
+     * ワーカースレッドから入れると描いている最中のものが追い出されてrecycleされてしまう.
+     */
+    private static AssetSet createFromSheet(SpriteSheet sheet, float scale,
+                                            float backgroundLeft, float backgroundTop, int spriteSteps) {
+        Bitmap background = toBitmap(sheet.find(SpriteSheet.ID_BACKGROUND, SpriteSheet.STEP_NONE));
+        Bitmap hour = toBitmap(sheet.find(SpriteSheet.ID_HOUR, SpriteSheet.STEP_NONE));
+        Bitmap hourAmbient = toBitmap(sheet.find(SpriteSheet.ID_HOUR_AMBIENT, SpriteSheet.STEP_NONE));
+        Bitmap minute = toBitmap(sheet.find(SpriteSheet.ID_MINUTE, SpriteSheet.STEP_NONE));
+        Bitmap minuteAmbient = toBitmap(sheet.find(SpriteSheet.ID_MINUTE_AMBIENT, SpriteSheet.STEP_NONE));
+        if (background == null || hour == null || hourAmbient == null || minute == null || minuteAmbient == null) {
+            recycle(background, hour, hourAmbient, minute, minuteAmbient);
+            return null;
+        }
+        Hand hourHand = new Hand(hour, hourAmbient, R.drawable.hour, scale, backgroundTop, backgroundLeft,
+                SpriteRenderer.HOUR_LEFT, SpriteRenderer.HOUR_TOP, SpriteRenderer.PIVOT_X, SpriteRenderer.PIVOT_Y);
+        Hand minuteHand = new Hand(minute, minuteAmbient, R.drawable.minute, scale, backgroundTop, backgroundLeft,
+                SpriteRenderer.MINUTE_LEFT, SpriteRenderer.MINUTE_TOP, SpriteRenderer.PIVOT_X, SpriteRenderer.PIVOT_Y);
+        hourHand.setSpriteMode(spriteSteps, HandSpriteCache.getInstance());
+        minuteHand.setSpriteMode(spriteSteps, HandSpriteCache.getInstance());
+        DisplaySpec spec = sheet.getSpec();
+        return new AssetSet(spec.width, spec.height, spec.round, scale, backgroundLeft, backgroundTop,
+                background, hourHand, minuteHand, Config.HAND_STYLE_BITMAP, true);
+    }
+
+    /**
+     * ビルド時に拡大縮小を済ませた画像を、拡大縮小せずにそのままデコードする. 読めなければnullを返す.
+     * 同じ画面のEngineで共有するので、プールからパスごとに借りる.
+     */
+    private static AssetSet createFromAssets(Resources resources, String dir, DisplaySpec spec, float scale,
+                                             float backgroundLeft, float backgroundTop, int spriteSteps,
+                                             int handStyle) {
+        ScaledBitmapPool pool = ScaledBitmapPool.getInstance();
+        Bitmap background = pool.acquireAsset(resources, dir + "/" + PrescaledAssets.BACKGROUND);
+        if (background == null) {
+            return null;
+        }
+        if (handStyle == Config.HAND_STYLE_VECTOR) {
+            int color = resources.getColor(R.color.analog_hands);
+            return new AssetSet(spec.width, spec.height, spec.round, scale, backgroundLeft, backgroundTop, background,
+                    VectorHand.hour(scale, backgroundTop, backgroundLeft, color),
+                    VectorHand.minute(scale, backgroundTop, backgroundLeft, color), Config.HAND_STYLE_VECTOR, false);
+        }
+        Bitmap hour = pool.acquireAsset(resources, dir + "/" + PrescaledAssets.HOUR);
+        Bitmap minute = pool.acquireAsset(resources, dir + "/" + PrescaledAssets.MINUTE);
+        if (hour == null || minute == null) {
+            pool.release(background);
+            pool.release(hour);
+            pool.release(minute);
+            return null;
+        }
+        Hand hourHand = new Hand(hour, R.drawable.hour, scale, backgroundTop, backgroundLeft,
+                SpriteRenderer.HOUR_LEFT, SpriteRenderer.HOUR_TOP, SpriteRenderer.PIVOT_X, SpriteRenderer.PIVOT_Y);
+        Hand minuteHand = new Hand(minute, R.drawable.minute, scale, backgroundTop, backgroundLeft,
+                SpriteRenderer.MINUTE_LEFT, SpriteRenderer.MINUTE_TOP, SpriteRenderer.PIVOT_X, SpriteRenderer.PIVOT_Y);
+        hourHand.setSpriteMode(spriteSteps, HandSpriteCache.getInstance());
+        minuteHand.setSpriteMode(spriteSteps, HandSpriteCache.getInstance());
+        return new AssetSet(spec.width, spec.height, spec.round, scale, backgroundLeft, backgroundTop, background,
+                hourHand, minuteHand, Config.HAND_STYLE_BITMAP, false);
+    }
+
+    /**
+     * 届いた画像からは背景だけを使い、針はパスで描く.
+     */
+    private static AssetSet createVector(Resources resources, SpriteSheet sheet, float scale,
+                                         float backgroundLeft, float backgroundTop) {
+        Bitmap background = toBitmap(sheet.find(SpriteSheet.ID_BACKGROUND, SpriteSheet.STEP_NONE));
+        if (background == null) {
+            return null;
+        }
+        int color = resources.getColor(R.color.analog_hands);
+        DisplaySpec spec = sheet.getSpec();
+        return new AssetSet(spec.width, spec.height, spec.round, scale, backgroundLeft, backgroundTop, background,
+                VectorHand.hour(scale, backgroundTop, backgroundLeft, color),
+                VectorHand.minute(scale, backgroundTop, backgroundLeft, color), Config.HAND_STYLE_VECTOR, true);
+    }
+
+    private static Bitmap toBitmap(SpriteSheet.Entry entry) {
+        if (entry == null) {
+            return null;
+        }
+        Bitmap bitmap = Bitmap.createBitmap(entry.width, entry.height,
+                entry.bytesPerPixel == SpriteSheet.BYTES_ALPHA_8 ? Bitmap.Config.ALPHA_8 : Bitmap.Config.ARGB_8888);
+        ByteBuffer pixels = entry.getPixels();
+        if (pixels.remaining() != bitmap.getRowBytes() * bitmap.getHeight()) {
+            // 行の詰め方が送り手と違う
+            bitmap.recycle();
+            return null;
+        }
+        bitmap.copyPixelsFromBuffer(pixels);
+        return bitmap;
+    }
+
+    private static void recycle(Bitmap... bitmaps) {
+        for (Bitmap bitmap : bitmaps) {
+            if (bitmap != null) {
+                bitmap.recycle();
+            }
+        }
+    }
+
+    /**
+     * 背景と針のバイト数の合計.
+     */
+    public long getByteCount() {
+        long bytes = hour.getByteCount() + minute.getByteCount();
+        if (background != null && !background.isRecycled()) {
+            bytes += background.getAllocationByteCount();
+        }
+        return bytes;
+    }
+
+    public boolean isRecycled() {
+        return background == null || background.isRecycled() || hour.isRecycled() || minute.isRecycled();
+    }
+
+    /**
+     * 指定した大きさと形の画面向けに、指定した針の描き方で組み立てたものかどうか.
+     */
+    public boolean isFor(int width, int height, boolean round, int handStyle) {
+        return isForDisplay(width, height, round) && this.handStyle == handStyle;
+    }
+
+    /**
+     * 指定した大きさと形の画面向けに組み立てたものかどうか. 針の描き方は問わない.
+     */
+    public boolean isForDisplay(int width, int height, boolean round) {
+        return this.width == width && this.height == height && this.round == round;
+    }
+
+    public void release() {
+        if (mOwnsBackground) {
+            background.recycle();
+        } else {
+            ScaledBitmapPool.getInstance().release(background);
+        }
+        hour.release();
+        minute.release();
+    }
+}
@@ -0,0 +1,26 @@
+package org.firespeed.myapplication;
+
+/**
+ * 電池残量("85%"のような形)を返す. 値はEngineが登録したレシーバーから{@link #setPercent}で受け取り、
+ * 描画中の問い合わせでは覚えている値を返すだけにする. 描画のたびにプロセス間通信をしないため.
+ */
+public class BatterySource implements TextLayer.Source {
+    private int mPercent = -1;
+    private String mText;
+
+    /**
+     * @param percent 電池残量. 分からなければ負の値
+     */
+    public void setPercent(int percent) {
+        if (percent == mPercent) {
+            return;
+        }
+        mPercent = percent;
+        mText = percent >= 0 ? percent + "%" : null;
+    }
+
+    @Override
+    public String getText(long timeMs, WallClock clock) {
+        return mText;
+    }
+}
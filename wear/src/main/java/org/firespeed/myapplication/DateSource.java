@@ -0,0 +1,27 @@
+package org.firespeed.myapplication;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * 曜日と日付("Sun 6"のような形)を返す. 日付は一時間ごとにしか問い合わされないので、
+ * その時だけフォーマッタを使う.
+ */
+public class DateSource implements TextLayer.Source {
+    private final SimpleDateFormat mFormat;
+    private final Date mDate = new Date();
+
+    public DateSource() {
+        mFormat = new SimpleDateFormat("EEE d", Locale.getDefault());
+    }
+
+    @Override
+    public String getText(long timeMs, WallClock clock) {
+        if (!mFormat.getTimeZone().equals(clock.getTimeZone())) {
+            mFormat.setTimeZone(clock.getTimeZone());
+        }
+        mDate.setTime(timeMs);
+        return mFormat.format(mDate);
+    }
+}
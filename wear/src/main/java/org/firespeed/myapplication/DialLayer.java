@@ -0,0 +1,95 @@
+package org.firespeed.myapplication;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+/**
+ * 背景・時針・分針をまとめて描いておくオフスクリーンのレイヤー.
+ * 分針の角度(量子化済み)・アンビエント状態・サイズが変わった時だけ描き直し、
+ * それ以外のフレームでは保持しているビットマップを一枚転送するだけにする.
+ */
+public class DialLayer {
+    private static final int NO_KEY = Integer.MIN_VALUE;
+
+    private Bitmap mBitmap;
+    private Canvas mCanvas;
+    private boolean mEnabled = true;
+    private int mKey = NO_KEY;
+    private boolean mAmbient;
+    private int mRebuildCount;
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * レイヤーを使うかどうかを切り替える. 無効にすると保持しているビットマップも解放する.
+     */
+    public void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+        if (!enabled) {
+            recycle();
+        }
+    }
+
+    /**
+     * 次の{@link #beginUpdate}で必ず描き直させる.
+     */
+    public void invalidate() {
+        mKey = NO_KEY;
+    }
+
+    /**
+     * レイヤーの描き直しが必要であれば、クリア済みのCanvasを返す. 不要であればnullを返す.
+     *
+     * @param key     時針と分針の絵を決める値. 分針が目に見えて進んだ時だけ変わるように量子化しておく
+     * @param ambient アンビエントモードかどうか
+     */
+    public Canvas beginUpdate(int width, int height, int key, boolean ambient) {
+        if (mBitmap == null || mBitmap.isRecycled()
+                || mBitmap.getWidth() != width || mBitmap.getHeight() != height) {
+            if (mBitmap != null) {
+                mBitmap.recycle();
+            }
+            mBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mCanvas = new Canvas(mBitmap);
+            mKey = NO_KEY;
+        }
+        if (mKey == key && mAmbient == ambient) {
+            return null;
+        }
+        mKey = key;
+        mAmbient = ambient;
+        mRebuildCount++;
+        mBitmap.eraseColor(0);
+        return mCanvas;
+    }
+
+    public void draw(Canvas canvas, Paint paint) {
+        canvas.drawBitmap(mBitmap, 0, 0, paint);
+    }
+
+    /**
+     * レイヤーを描き直した回数.
+     */
+    public int getRebuildCount() {
+        return mRebuildCount;
+    }
+
+    /**
+     * 保持しているビットマップのバイト数.
+     */
+    public long getByteCount() {
+        return mBitmap == null || mBitmap.isRecycled() ? 0 : mBitmap.getAllocationByteCount();
+    }
+
+    public void recycle() {
+        if (mBitmap != null) {
+            mBitmap.recycle();
+            mBitmap = null;
+            mCanvas = null;
+        }
+        mKey = NO_KEY;
+    }
+}
@@ -0,0 +1,156 @@
+package org.firespeed.myapplication;
+
+import android.os.Handler;
+import android.os.Message;
+import android.view.Choreographer;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * インタラクティブモードの再描画のタイミングを決める.
+ * 秒針の動き方({@link MotionCurve})に合わせて、秒針が止まっている間は寝て、
+ * 動いている間だけ指定間隔(連続して動く場合はvsyncも可)で起きる.
+ * 前回と同じ絵になるフレームは描かない.
+ */
+public class FrameScheduler extends Handler implements Choreographer.FrameCallback {
+    private static final int MSG_FRAME = 0;
+    private static final long SECOND_MS = 1000;
+
+    public interface Callback {
+        /**
+         * 指定時刻に描く絵が前回描いたものと変わるかどうか.
+         */
+        boolean isFrameChanged(long timeMs);
+
+        /**
+         * 再描画を依頼する.
+         */
+        void onFrame();
+    }
+
+    private final WeakReference<Callback> mWeakReference;
+    private MotionCurve mCurve;
+    private long mFrameIntervalMs;
+    private boolean mFollowVsync;
+    private boolean mRunning;
+
+    private int mWakeupCount;
+    private int mFrameCount;
+    private int mSkippedCount;
+
+    public FrameScheduler(Callback callback, MotionCurve curve, long frameIntervalMs) {
+        mWeakReference = new WeakReference<>(callback);
+        mCurve = curve;
+        mFrameIntervalMs = frameIntervalMs;
+    }
+
+    public void setCurve(MotionCurve curve) {
+        if (mCurve != curve) {
+            mCurve = curve;
+            reschedule();
+        }
+    }
+
+    /**
+     * 秒針が動いている間の描画間隔.
+     */
+    public void setFrameIntervalMs(long frameIntervalMs) {
+        mFrameIntervalMs = frameIntervalMs;
+        reschedule();
+    }
+
+    /**
+     * 秒針が連続して動く場合に、描画間隔の代わりにvsyncに合わせるかどうか.
+     */
+    public void setFollowVsync(boolean followVsync) {
+        mFollowVsync = followVsync;
+        reschedule();
+    }
+
+    public void start() {
+        mRunning = true;
+        cancel();
+        sendEmptyMessage(MSG_FRAME);
+    }
+
+    public void stop() {
+        mRunning = false;
+        cancel();
+    }
+
+    private void cancel() {
+        removeMessages(MSG_FRAME);
+        Choreographer.getInstance().removeFrameCallback(this);
+    }
+
+    private void reschedule() {
+        if (mRunning) {
+            cancel();
+            scheduleNext(System.currentTimeMillis());
+        }
+    }
+
+    @Override
+    public void handleMessage(Message msg) {
+        switch (msg.what) {
+            case MSG_FRAME:
+                onWakeup();
+                break;
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        onWakeup();
+    }
+
+    private void onWakeup() {
+        Callback callback = mWeakReference.get();
+        if (callback == null || !mRunning) {
+            return;
+        }
+        mWakeupCount++;
+        long timeMs = System.currentTimeMillis();
+        if (callback.isFrameChanged(timeMs)) {
+            mFrameCount++;
+            callback.onFrame();
+        } else {
+            mSkippedCount++;
+        }
+        scheduleNext(timeMs);
+    }
+
+    private void scheduleNext(long timeMs) {
+        if (mCurve.isContinuous() && mFollowVsync) {
+            Choreographer.getInstance().postFrameCallback(this);
+        } else {
+            sendEmptyMessageDelayed(MSG_FRAME, nextDelayMs(mCurve, mFrameIntervalMs, timeMs));
+        }
+    }
+
+    /**
+     * 次に起きるまでの時間を求める. 秒針の向きが次に変わるまでは寝て、
+     * 動いている間は描画間隔で起きる. 秒の頭には必ず合わせる.
+     */
+    public static long nextDelayMs(MotionCurve curve, long frameIntervalMs, long timeMs) {
+        long toNextFrame = frameIntervalMs - (timeMs % frameIntervalMs);
+        int millis = (int) (timeMs % SECOND_MS);
+        long toNextChange = curve.nextChangeMs(millis) - millis;
+        return Math.min(Math.max(toNextChange, toNextFrame), SECOND_MS - millis);
+    }
+
+    public int getWakeupCount() {
+        return mWakeupCount;
+    }
+
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * 前回と同じ絵になるため描かなかったフレームの数.
+     */
+    public int getSkippedCount() {
+        return mSkippedCount;
+    }
+}
@@ -0,0 +1,160 @@
+package org.firespeed.myapplication;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+import java.io.PrintWriter;
+
+/**
+ * onDrawの所要時間の計測. 計測中はメモリを確保しない.
+ * 1フレームの時間はヒストグラムに、各段階の時間は合計と最大に積み上げる.
+ */
+public class FrameStats {
+    public static final int PHASE_ASSETS = 0;
+    public static final int PHASE_BACKGROUND = 1;
+    public static final int PHASE_HANDS = 2;
+    public static final int PHASE_SECOND = 3;
+    public static final int PHASE_TEXT = 4;
+    private static final int PHASE_COUNT = 5;
+    private static final String[] PHASE_NAMES = {"assets", "background", "hands", "second", "text"};
+
+    /**
+     * ヒストグラムの各区間の上限(ミリ秒). 最後の区間は上限なし.
+     */
+    private static final long[] BUCKET_UPPER_MS = {1, 2, 4, 8, 16, 33, 66};
+    private static final long NANOS_PER_MS = 1000000L;
+
+    private final long mDeadlineNanos;
+    private final long[] mHistogram = new long[BUCKET_UPPER_MS.length + 1];
+    private final long[] mPhaseTotalNanos = new long[PHASE_COUNT];
+    private final long[] mPhaseMaxNanos = new long[PHASE_COUNT];
+    private final long[] mPhaseFrameNanos = new long[PHASE_COUNT];
+    private long mFrameCount;
+    private long mMissedCount;
+    private long mTotalNanos;
+    private long mMaxNanos;
+    private long mLastNanos;
+    private int mAssetRebuildCount;
+
+    private long mFrameStart;
+    private long mMark;
+
+    /**
+     * @param deadlineMs 1フレームにかけてよい時間. これを超えたフレームを数える
+     */
+    public FrameStats(long deadlineMs) {
+        mDeadlineNanos = deadlineMs * NANOS_PER_MS;
+    }
+
+    public void begin() {
+        mFrameStart = System.nanoTime();
+        mMark = mFrameStart;
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            mPhaseFrameNanos[i] = 0;
+        }
+    }
+
+    /**
+     * 前回の区切りからの時間を指定した段階のものとして加える.
+     */
+    public void lap(int phase) {
+        long now = System.nanoTime();
+        mPhaseFrameNanos[phase] += now - mMark;
+        mMark = now;
+    }
+
+    public void end() {
+        long elapsed = System.nanoTime() - mFrameStart;
+        mFrameCount++;
+        mTotalNanos += elapsed;
+        mLastNanos = elapsed;
+        if (elapsed > mMaxNanos) {
+            mMaxNanos = elapsed;
+        }
+        if (elapsed > mDeadlineNanos) {
+            mMissedCount++;
+        }
+        int bucket = 0;
+        while (bucket < BUCKET_UPPER_MS.length && elapsed > BUCKET_UPPER_MS[bucket] * NANOS_PER_MS) {
+            bucket++;
+        }
+        mHistogram[bucket]++;
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            long phase = mPhaseFrameNanos[i];
+            mPhaseTotalNanos[i] += phase;
+            if (phase > mPhaseMaxNanos[i]) {
+                mPhaseMaxNanos[i] = phase;
+            }
+        }
+    }
+
+    /**
+     * 背景や針のビットマップを作り直した回数を数える.
+     */
+    public void countAssetRebuild() {
+        mAssetRebuildCount++;
+    }
+
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * 期限に間に合わなかったフレームの数.
+     */
+    public long getMissedCount() {
+        return mMissedCount;
+    }
+
+    public int getAssetRebuildCount() {
+        return mAssetRebuildCount;
+    }
+
+    public void reset() {
+        for (int i = 0; i < mHistogram.length; i++) {
+            mHistogram[i] = 0;
+        }
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            mPhaseTotalNanos[i] = 0;
+            mPhaseMaxNanos[i] = 0;
+        }
+        mFrameCount = 0;
+        mMissedCount = 0;
+        mTotalNanos = 0;
+        mMaxNanos = 0;
+        mAssetRebuildCount = 0;
+    }
+
+    public void dump(PrintWriter writer, String prefix) {
+        writer.print(prefix);
+        writer.println("frames=" + mFrameCount + " missed=" + mMissedCount
+                + " avg=" + formatMs(mFrameCount == 0 ? 0 : mTotalNanos / mFrameCount)
+                + " max=" + formatMs(mMaxNanos) + " assetRebuilds=" + mAssetRebuildCount);
+        writer.print(prefix);
+        writer.print("histogram:");
+        for (int i = 0; i < mHistogram.length; i++) {
+            writer.print(i < BUCKET_UPPER_MS.length ? " <=" + BUCKET_UPPER_MS[i] + "ms:" : " >" + BUCKET_UPPER_MS[i - 1] + "ms:");
+            writer.print(mHistogram[i]);
+        }
+        writer.println();
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            writer.print(prefix);
+            writer.println(PHASE_NAMES[i] + ": avg=" + formatMs(mFrameCount == 0 ? 0 : mPhaseTotalNanos[i] / mFrameCount)
+                    + " max=" + formatMs(mPhaseMaxNanos[i]));
+        }
+    }
+
+    /**
+     * 画面上に直近の数値を重ねて描く. デバッグ用なので文字列の確保は気にしない.
+     */
+    public void drawOverlay(Canvas canvas, Paint paint, float x, float y) {
+        float lineHeight = paint.getTextSize() * 1.2f;
+        canvas.drawText("last " + formatMs(mLastNanos) + " max " + formatMs(mMaxNanos), x, y, paint);
+        canvas.drawText("missed " + mMissedCount + "/" + mFrameCount, x, y + lineHeight, paint);
+        canvas.drawText("rebuilds " + mAssetRebuildCount, x, y + lineHeight * 2, paint);
+    }
+
+    private static String formatMs(long nanos) {
+        return String.format("%.2fms", nanos / (double) NANOS_PER_MS);
+    }
+}
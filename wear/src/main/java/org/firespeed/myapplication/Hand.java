@@ -5,12 +5,13 @@ import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Matrix;
 import android.graphics.Paint;
-import android.graphics.drawable.BitmapDrawable;
+
+import org.firespeed.both.SpriteRenderer;
 
 /**
  * Created by kenz on 2015/12/06.
  */
-public class Hand {
+public class Hand implements HandRenderer {
     private Bitmap mScaledBitmap;
     private Bitmap mAmbientBitmap;
     private final int mBitmapId;
@@ -20,46 +21,156 @@ public class Hand {
     private final float mCenterX;
     private final float mCenterY;
     private final float mScale;
+    private int mSpriteSteps;
+    /**
+     * プールから借りたものでなく、自分で持っているビットマップかどうか.
+     */
+    private boolean mOwnsBitmaps;
+    private HandSpriteCache mSpriteCache;
+    /**
+     * キャッシュを引くためのキー. 毎フレーム作らないように使い回す.
+     */
+    private final HandSpriteCache.Key mSpriteKey = new HandSpriteCache.Key(0, 0f, 0, false);
 
     private static Bitmap createScaledBitmap(Resources resources, int id, float scale) {
-        Bitmap original = ((BitmapDrawable) (resources.getDrawable(id))).getBitmap();
-        Bitmap scaled = Bitmap.createScaledBitmap(original, (int) (original.getWidth() * scale),
-                (int) (original.getHeight() * scale), true);
-        return scaled;
+        return ScaledBitmapPool.getInstance().acquire(resources, id, scale, Bitmap.Config.ARGB_8888);
     }
 
     public Hand(Resources resources, int bitmapId, int ambientBitmapId, float scale, float backgroundTop, float backgroundLeft, float left, float top, float centerX, float centerY) {
-        mScaledBitmap = createScaledBitmap(resources, bitmapId, scale);
-        if(bitmapId == ambientBitmapId) {
-            mAmbientBitmap = mScaledBitmap;
-        }else{
-            mAmbientBitmap = createScaledBitmap(resources, ambientBitmapId, scale);
-        }
+        mBitmapId = bitmapId;
+        mAmbientBitmapId = ambientBitmapId;
+        mScale = scale;
+        loadBitmaps(resources);
         mLeft = left * scale + backgroundLeft;
         mTop = top * scale + backgroundTop;
         mCenterX = centerX * scale + backgroundLeft;
         mCenterY = centerY * scale + backgroundTop;
+    }
+
+    /**
+     * 拡大縮小済みのビットマップから作る. ビットマップは{@link #release}で解放する.
+     */
+    public Hand(Bitmap scaledBitmap, Bitmap ambientBitmap, int bitmapId, float scale, float backgroundTop, float backgroundLeft, float left, float top, float centerX, float centerY) {
         mBitmapId = bitmapId;
-        mAmbientBitmapId = ambientBitmapId;
+        mAmbientBitmapId = bitmapId;
         mScale = scale;
+        mScaledBitmap = scaledBitmap;
+        mAmbientBitmap = ambientBitmap;
+        mOwnsBitmaps = true;
+        mLeft = left * scale + backgroundLeft;
+        mTop = top * scale + backgroundTop;
+        mCenterX = centerX * scale + backgroundLeft;
+        mCenterY = centerY * scale + backgroundTop;
     }
 
-    public void rescaleBitmap(Resources resources) {
+    /**
+     * プールから借りた拡大縮小済みのビットマップから作る. アンビエント用のビットマップはここで作る.
+     * 借りたビットマップは{@link #release}でプールに返す.
+     */
+    public Hand(Bitmap pooledBitmap, int bitmapId, float scale, float backgroundTop, float backgroundLeft, float left, float top, float centerX, float centerY) {
+        mBitmapId = bitmapId;
+        mAmbientBitmapId = bitmapId;
+        mScale = scale;
+        mScaledBitmap = pooledBitmap;
+        mAmbientBitmap = SpriteRenderer.createAmbientBitmap(pooledBitmap);
+        mLeft = left * scale + backgroundLeft;
+        mTop = top * scale + backgroundTop;
+        mCenterX = centerX * scale + backgroundLeft;
+        mCenterY = centerY * scale + backgroundTop;
+    }
+
+    private void loadBitmaps(Resources resources) {
         mScaledBitmap = createScaledBitmap(resources, mBitmapId, mScale);
-        if(mBitmapId == mAmbientBitmapId){
-            mAmbientBitmap = mScaledBitmap;
-        }else{
-            mAmbientBitmap = createScaledBitmap(resources, mAmbientBitmapId, mScale);
+        if (mBitmapId == mAmbientBitmapId) {
+            mAmbientBitmap = SpriteRenderer.createAmbientBitmap(mScaledBitmap);
+        } else {
+            Bitmap ambientSource = createScaledBitmap(resources, mAmbientBitmapId, mScale);
+            mAmbientBitmap = SpriteRenderer.createAmbientBitmap(ambientSource);
+            ScaledBitmapPool.getInstance().release(ambientSource);
         }
     }
 
+    public void rescaleBitmap(Resources resources) {
+        release();
+        loadBitmaps(resources);
+    }
+
+    /**
+     * 回転済みスプライトを使うモードにする. 一周をsteps分割し、最も近い角度のスプライトを回転なしで転送する.
+     *
+     * @param steps 一周の分割数. 0以下ならスプライトを使わず毎回回転して描く
+     * @param cache スプライトの保持先
+     */
+    public void setSpriteMode(int steps, HandSpriteCache cache) {
+        mSpriteSteps = steps;
+        mSpriteCache = cache;
+    }
+
+    /**
+     * 針を描く. アンビエントでは二値化したビットマップをpaintの色でそのまま回転して描く.
+     */
+    @Override
     public void draw(Canvas canvas, Paint paint, Matrix matrix, float rotate, boolean isAmbient) {
         paint.setFilterBitmap(!isAmbient);
+        if (!isAmbient && mSpriteSteps > 0 && mSpriteCache != null) {
+            drawSprite(canvas, paint, matrix, rotate);
+            return;
+        }
         matrix.setTranslate(mLeft, mTop);
         matrix.postRotate(rotate, mCenterX, mCenterY);
         canvas.drawBitmap(isAmbient?mAmbientBitmap:mScaledBitmap, matrix, paint);
     }
 
+    private void drawSprite(Canvas canvas, Paint paint, Matrix matrix, float rotate) {
+        int step = Math.round(rotate / 360f * mSpriteSteps) % mSpriteSteps;
+        if (step < 0) {
+            step += mSpriteSteps;
+        }
+        Bitmap source = mScaledBitmap;
+        float pivotX = mCenterX - mLeft;
+        float pivotY = mCenterY - mTop;
+        Bitmap sprite = mSpriteCache.get(mSpriteKey.set(mBitmapId, mScale, step, false));
+        if (sprite == null || sprite.isRecycled()) {
+            sprite = SpriteRenderer.createRotatedSprite(source, pivotX, pivotY, step * 360f / mSpriteSteps, paint, matrix);
+            mSpriteCache.put(new HandSpriteCache.Key(mBitmapId, mScale, step, false), sprite);
+        }
+        int radius = sprite.getWidth() / 2;
+        canvas.drawBitmap(sprite, mCenterX - radius, mCenterY - radius, paint);
+    }
+
+    /**
+     * プールから借りているビットマップを返し、自分で持っているビットマップを解放する.
+     */
+    @Override
+    public void release() {
+        if (mAmbientBitmap != null) {
+            mAmbientBitmap.recycle();
+        }
+        if (mOwnsBitmaps) {
+            if (mScaledBitmap != null) {
+                mScaledBitmap.recycle();
+            }
+            mOwnsBitmaps = false;
+        } else {
+            ScaledBitmapPool.getInstance().release(mScaledBitmap);
+        }
+        mScaledBitmap = null;
+        mAmbientBitmap = null;
+    }
+
+    /**
+     * 持っているビットマップのバイト数. 回転済みスプライトはキャッシュの側で数える.
+     */
+    @Override
+    public long getByteCount() {
+        return byteCount(mScaledBitmap) + byteCount(mAmbientBitmap);
+    }
+
+    private static long byteCount(Bitmap bitmap) {
+        return bitmap == null || bitmap.isRecycled() ? 0 : bitmap.getAllocationByteCount();
+    }
+
+    @Override
     public boolean isRecycled() {
         return mScaledBitmap == null || mScaledBitmap.isRecycled() || mAmbientBitmap == null || mAmbientBitmap.isRecycled();
     }
@@ -0,0 +1,29 @@
+package org.firespeed.myapplication;
+
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+
+/**
+ * 針の描き方. 画像を回転して描く{@link Hand}と、パスを回転して描く{@link VectorHand}がある.
+ */
+public interface HandRenderer {
+    /**
+     * 針を描く.
+     *
+     * @param paint     描画に使うPaint. アンビエントではこの色で描く
+     * @param matrix    作業用. 呼び出し元で使い回す
+     * @param rotate    12時からの角度(度)
+     * @param isAmbient アンビエントモードかどうか
+     */
+    void draw(Canvas canvas, Paint paint, Matrix matrix, float rotate, boolean isAmbient);
+
+    /**
+     * 針が持っているビットマップのバイト数.
+     */
+    long getByteCount();
+
+    boolean isRecycled();
+
+    void release();
+}
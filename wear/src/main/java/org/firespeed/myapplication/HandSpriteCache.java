@@ -0,0 +1,94 @@
+package org.firespeed.myapplication;
+
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+import java.io.PrintWriter;
+
+/**
+ * 回転済みの針のスプライトを保持するLRUキャッシュ.
+ * キーは(リソースID, 拡大率, 角度のステップ, アンビエントかどうか)で、上限はバイト数で指定する.
+ * 針ごとに全角度を持つと大きくなりすぎるので、いま使っている角度付近だけが残るようにしている.
+ * 上限は{@link #resize}で文字盤から変えられる.
+ */
+public class HandSpriteCache extends LruCache<HandSpriteCache.Key, Bitmap> {
+    /**
+     * デフォルトの上限. 針二本分の現在角度と直前の数ステップが収まる程度.
+     */
+    public static final int DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+
+    private static HandSpriteCache sInstance;
+
+    public static synchronized HandSpriteCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new HandSpriteCache(DEFAULT_MAX_BYTES);
+        }
+        return sInstance;
+    }
+
+    public HandSpriteCache(int maxBytes) {
+        super(maxBytes);
+    }
+
+    @Override
+    protected int sizeOf(Key key, Bitmap value) {
+        return value.getByteCount();
+    }
+
+    @Override
+    protected void entryRemoved(boolean evicted, Key key, Bitmap oldValue, Bitmap newValue) {
+        if (oldValue != newValue) {
+            oldValue.recycle();
+        }
+    }
+
+    public void dump(PrintWriter writer, String prefix) {
+        writer.print(prefix);
+        writer.println("handSprites: bytes=" + size() + " max=" + maxSize() + " hits=" + hitCount()
+                + " misses=" + missCount() + " evictions=" + evictionCount());
+    }
+
+    /**
+     * キャッシュのキー. 引くだけなら{@link #set}で一つを使い回し、入れる時は新しく作ること.
+     */
+    public static final class Key {
+        private int mResourceId;
+        private int mScaleBits;
+        private int mStep;
+        private boolean mAmbient;
+
+        public Key(int resourceId, float scale, int step, boolean ambient) {
+            set(resourceId, scale, step, ambient);
+        }
+
+        public Key set(int resourceId, float scale, int step, boolean ambient) {
+            mResourceId = resourceId;
+            mScaleBits = Float.floatToIntBits(scale);
+            mStep = step;
+            mAmbient = ambient;
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return mResourceId == key.mResourceId && mScaleBits == key.mScaleBits
+                    && mStep == key.mStep && mAmbient == key.mAmbient;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mResourceId;
+            result = 31 * result + mScaleBits;
+            result = 31 * result + mStep;
+            result = 31 * result + (mAmbient ? 1 : 0);
+            return result;
+        }
+    }
+}
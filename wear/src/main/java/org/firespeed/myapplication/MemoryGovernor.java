@@ -0,0 +1,164 @@
+package org.firespeed.myapplication;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.PrintWriter;
+
+/**
+ * 一つの文字盤(Engine)が持っているビットマップのバイト数を数え、
+ * 見えなくなった時やonTrimMemoryで作り直しの安いものから順に解放する.
+ * 解放したものは必要になった時に作り直す(背景と針は{@link AssetLoader}でワーカースレッドで組み立てる).
+ * プロセスで共有しているビットマップのプールと針のスプライトは、他の文字盤が使っているので
+ * ここでは数えず解放もしない. それらは{@link SharedCacheTrimmer}がプロセスで一度だけ解放する.
+ * メインスレッドから使う.
+ */
+public class MemoryGovernor implements ComponentCallbacks2 {
+    public static final int LEVEL_NONE = 0;
+    /**
+     * 文字盤と文字のレイヤー. 次のフレームで描き直せる.
+     */
+    public static final int LEVEL_LAYERS = 1;
+    /**
+     * 背景と針. 組み立て直すまでは代わりの描画になる.
+     */
+    public static final int LEVEL_ASSETS = 2;
+    private static final String[] LEVEL_NAMES = {"none", "layers", "assets"};
+
+    /**
+     * 見えなくなってから背景と針まで解放するまでの時間. すぐに見える状態に戻った時に組み立て直さずに済むように.
+     */
+    public static final long INVISIBLE_GRACE_MS = 10 * 1000;
+    /**
+     * 一つの文字盤が持ってよいバイト数の既定値. 512MBの端末を想定している.
+     */
+    public static final long DEFAULT_BUDGET_BYTES = 8 * 1024 * 1024;
+
+    private final WatchFaceRenderer mRenderer;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private long mBudgetBytes = DEFAULT_BUDGET_BYTES;
+    private boolean mVisible;
+    private int mTrimCount;
+    private int mLastTrimLevel = LEVEL_NONE;
+    private int mOverBudgetCount;
+    private long mPeakBytes;
+
+    private final Runnable mReleaseInvisible = new Runnable() {
+        @Override
+        public void run() {
+            release(LEVEL_ASSETS);
+        }
+    };
+
+    public MemoryGovernor(WatchFaceRenderer renderer) {
+        mRenderer = renderer;
+    }
+
+    public void setBudgetBytes(long budgetBytes) {
+        mBudgetBytes = budgetBytes;
+    }
+
+    public long getBudgetBytes() {
+        return mBudgetBytes;
+    }
+
+    public void onVisibilityChanged(boolean visible) {
+        mVisible = visible;
+        mHandler.removeCallbacks(mReleaseInvisible);
+        if (!visible) {
+            release(LEVEL_LAYERS);
+            mHandler.postDelayed(mReleaseInvisible, INVISIBLE_GRACE_MS);
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            release(LEVEL_ASSETS);
+        } else if ((level >= TRIM_MEMORY_UI_HIDDEN || level == TRIM_MEMORY_RUNNING_LOW) && !mVisible) {
+            release(LEVEL_LAYERS);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        release(LEVEL_ASSETS);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    /**
+     * 指定した段階までを解放する. 背景と針は見えている間は解放しない.
+     */
+    public void release(int level) {
+        if (level >= LEVEL_ASSETS && mVisible) {
+            level = LEVEL_LAYERS;
+        }
+        mTrimCount++;
+        mLastTrimLevel = level;
+        if (level >= LEVEL_LAYERS) {
+            mRenderer.getDialLayer().recycle();
+            mRenderer.getTextLayer().recycle();
+        }
+        if (level >= LEVEL_ASSETS) {
+            mRenderer.releaseAssets();
+        }
+    }
+
+    /**
+     * 予算を超えていれば、超えなくなるまで作り直しの安いものから解放する.
+     *
+     * @return 解放した段階. 超えていなければ{@link #LEVEL_NONE}
+     */
+    public int enforceBudget() {
+        long bytes = getBytesHeld();
+        if (bytes > mPeakBytes) {
+            mPeakBytes = bytes;
+        }
+        if (bytes <= mBudgetBytes) {
+            return LEVEL_NONE;
+        }
+        mOverBudgetCount++;
+        int maxLevel = mVisible ? LEVEL_LAYERS : LEVEL_ASSETS;
+        for (int level = LEVEL_LAYERS; level <= maxLevel; level++) {
+            release(level);
+            if (getBytesHeld() <= mBudgetBytes) {
+                return level;
+            }
+        }
+        return maxLevel;
+    }
+
+    /**
+     * この文字盤が持っているバイト数. 背景と針、文字盤と文字のレイヤーを数える.
+     * 文字盤が二つあると共有の分を二重に数えてしまうので、針のスプライトと再利用待ちのビットマップは含めない.
+     */
+    public long getBytesHeld() {
+        return mRenderer.getAssetBytes()
+                + mRenderer.getDialLayer().getByteCount()
+                + mRenderer.getTextLayer().getByteCount();
+    }
+
+    public int getTrimCount() {
+        return mTrimCount;
+    }
+
+    public void stop() {
+        mHandler.removeCallbacks(mReleaseInvisible);
+    }
+
+    public void dump(PrintWriter writer, String prefix) {
+        writer.print(prefix);
+        writer.println("memory: held=" + getBytesHeld() + " peak=" + mPeakBytes + " budget=" + mBudgetBytes
+                + " assets=" + mRenderer.getAssetBytes()
+                + " dialLayer=" + mRenderer.getDialLayer().getByteCount()
+                + " textLayer=" + mRenderer.getTextLayer().getByteCount());
+        writer.print(prefix);
+        writer.println("trims=" + mTrimCount + " lastTrim=" + LEVEL_NAMES[mLastTrimLevel]
+                + " overBudget=" + mOverBudgetCount);
+    }
+}
@@ -0,0 +1,137 @@
+package org.firespeed.myapplication;
+
+import org.firespeed.both.Config;
+
+/**
+ * 秒針の動き方. 1秒の中のミリ秒ごとの進み具合と、角度ごとのsin/cosを前もって表にしておき、
+ * 描画時は表を引くだけで秒針の向きが決まるようにする.
+ */
+public class MotionCurve {
+    /**
+     * 一周の分割数. 0.1度単位.
+     */
+    public static final int RESOLUTION = 3600;
+    /**
+     * 秒針が1秒で進む分割数.
+     */
+    public static final int STEPS_PER_SECOND = RESOLUTION / 60;
+
+    private static final int SECOND_MS = 1000;
+    /**
+     * 加速・バネの動きで秒針が動き始める、秒の頭からの経過ミリ秒.
+     */
+    private static final int EASE_START_MS = 800;
+    private static final float[] SIN = new float[RESOLUTION];
+    private static final float[] COS = new float[RESOLUTION];
+
+    static {
+        for (int i = 0; i < RESOLUTION; i++) {
+            double rad = 2 * Math.PI * i / RESOLUTION;
+            SIN[i] = (float) Math.sin(rad);
+            COS[i] = (float) Math.cos(rad);
+        }
+    }
+
+    private static final MotionCurve[] CURVES = new MotionCurve[Config.MOTION_SPRING + 1];
+
+    private final int mMotion;
+    /**
+     * 秒の頭からの経過ミリ秒ごとの、秒の頭からの進み(分割数).
+     */
+    private final int[] mOffset = new int[SECOND_MS];
+    /**
+     * 経過ミリ秒ごとの、次に進みが変わる経過ミリ秒. 秒の終わりまで変わらなければ1000.
+     */
+    private final int[] mNextChange = new int[SECOND_MS];
+
+    /**
+     * 指定した動き方の曲線を返す. 表は最初に使う時に作る.
+     */
+    public static synchronized MotionCurve get(int motion) {
+        if (motion < 0 || motion >= CURVES.length) {
+            motion = Config.MOTION_QUADRATIC_EASE;
+        }
+        if (CURVES[motion] == null) {
+            CURVES[motion] = new MotionCurve(motion);
+        }
+        return CURVES[motion];
+    }
+
+    private MotionCurve(int motion) {
+        mMotion = motion;
+        for (int ms = 0; ms < SECOND_MS; ms++) {
+            mOffset[ms] = Math.round(progress(motion, ms) * STEPS_PER_SECOND);
+        }
+        int next = SECOND_MS;
+        for (int ms = SECOND_MS - 1; ms >= 0; ms--) {
+            mNextChange[ms] = next;
+            if (ms > 0 && mOffset[ms - 1] != mOffset[ms]) {
+                next = ms;
+            }
+        }
+    }
+
+    /**
+     * 秒の頭からの進み具合. 0で秒の頭の位置、1で次の秒の位置.
+     */
+    private static float progress(int motion, int ms) {
+        switch (motion) {
+            case Config.MOTION_SMOOTH:
+                return ms / (float) SECOND_MS;
+            case Config.MOTION_TICK:
+                return 0f;
+            case Config.MOTION_SWEEP_8HZ:
+                return (ms / 125) / 8f;
+            case Config.MOTION_SPRING: {
+                if (ms <= EASE_START_MS) {
+                    return 0f;
+                }
+                // 減衰振動で行き過ぎてから戻る
+                double t = (ms - EASE_START_MS) / 200.0;
+                return (float) (1 - Math.exp(-5 * t) * Math.cos(3 * Math.PI * t));
+            }
+            case Config.MOTION_QUADRATIC_EASE:
+            default: {
+                if (ms <= EASE_START_MS) {
+                    return 0f;
+                }
+                float shift = (ms - EASE_START_MS) / 200f;
+                return shift * shift;
+            }
+        }
+    }
+
+    public int getMotion() {
+        return mMotion;
+    }
+
+    /**
+     * 途切れなく動き続けるかどうか. vsyncに合わせて描く価値があるのはこの場合だけ.
+     */
+    public boolean isContinuous() {
+        return mMotion == Config.MOTION_SMOOTH;
+    }
+
+    /**
+     * 秒針の向き(0〜{@link #RESOLUTION}-1).
+     */
+    public int angleIndex(int second, int millisecond) {
+        int index = (second * STEPS_PER_SECOND + mOffset[millisecond]) % RESOLUTION;
+        return index < 0 ? index + RESOLUTION : index;
+    }
+
+    /**
+     * 秒針の向きが次に変わる、秒の頭からの経過ミリ秒. 秒の終わりまで変わらなければ1000.
+     */
+    public int nextChangeMs(int millisecond) {
+        return mNextChange[millisecond];
+    }
+
+    public static float sin(int angleIndex) {
+        return SIN[angleIndex];
+    }
+
+    public static float cos(int angleIndex) {
+        return COS[angleIndex];
+    }
+}
@@ -21,16 +21,12 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.res.Resources;
-import android.graphics.Bitmap;
 import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Matrix;
-import android.graphics.Paint;
 import android.graphics.Rect;
-import android.graphics.drawable.BitmapDrawable;
+import android.os.BatteryManager;
 import android.os.Bundle;
 import android.os.Handler;
-import android.os.Message;
+import android.os.Looper;
 import android.os.PowerManager;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
@@ -38,9 +34,16 @@ import android.view.SurfaceHolder;
 import android.view.WindowInsets;
 
 import org.firespeed.both.Config;
-
-import java.lang.ref.WeakReference;
-import java.util.Calendar;
+import org.firespeed.both.ConfigKey;
+import org.firespeed.both.ConfigSnapshot;
+import org.firespeed.both.DisplaySpec;
+import org.firespeed.both.WearableConnection;
+import org.firespeed.both.WearableSpriteChannel;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.List;
 import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
@@ -55,50 +58,108 @@ public class MyWatchFace extends CanvasWatchFaceService {
      */
     private static final long INTERACTIVE_UPDATE_RATE_MS = TimeUnit.SECONDS.toMillis(1) / 30;
 
-    /**
-     * Handler message id for updating the time periodically in interactive mode.
-     */
-    private static final int MSG_UPDATE_TIME = 0;
+    private StartupTrace mStartupTrace;
+    private SharedCacheTrimmer mSharedCacheTrimmer;
+
+    @Override
+    public void onCreate() {
+        // サービスの生成から最初のフレームまでを計る
+        mStartupTrace = new StartupTrace();
+        int section = mStartupTrace.begin("MyWatchFace.onCreate");
+        super.onCreate();
+        // 共有のキャッシュはEngineの数によらず一度だけ解放する
+        mSharedCacheTrimmer = new SharedCacheTrimmer();
+        registerComponentCallbacks(mSharedCacheTrimmer);
+        mStartupTrace.end(section);
+    }
+
+    @Override
+    public void onDestroy() {
+        unregisterComponentCallbacks(mSharedCacheTrimmer);
+        super.onDestroy();
+    }
 
     @Override
     public Engine onCreateEngine() {
-        return new Engine();
+        // 二つ目からのEngineはそれ自身の生成から計る
+        StartupTrace trace = mStartupTrace != null ? mStartupTrace : new StartupTrace();
+        mStartupTrace = null;
+        return new Engine(trace);
     }
 
-    private class Engine extends CanvasWatchFaceService.Engine {
-        private static final float DESIGNED_SIZE = 512f;
-        final Handler mUpdateTimeHandler = new EngineHandler(this);
+    private class Engine extends CanvasWatchFaceService.Engine implements FrameScheduler.Callback {
+        /**
+         * 針のスプライトの一周あたりの分割数. 0にすると回転して描く.
+         * 時針と分針は文字盤のレイヤーに描いたものを使い回すので、普段はスプライトを使わない.
+         * レイヤーを無効にして比べる時などに720などにする.
+         */
+        private static final int HAND_SPRITE_STEPS = 0;
+        /**
+         * 針のスプライトのキャッシュの上限.
+         */
+        private static final int HAND_SPRITE_CACHE_BYTES = HandSpriteCache.DEFAULT_MAX_BYTES;
+        private WatchFaceRenderer mRenderer;
+        private FrameScheduler mFrameScheduler;
+        private final StartupTrace mStartupTrace;
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+        /**
+         * 最初のフレームを描くのに要らない準備(スマートフォンとの接続、タイムゾーンと電池の監視)を済ませたかどうか.
+         */
+        private boolean mStarted;
 
-        final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
+        /**
+         * 最初のフレームを描いた後に回した準備.
+         */
+        private final Runnable mDeferredStart = new Runnable() {
             @Override
-            public void onReceive(Context context, Intent intent) {
-                mCalendar.setTimeZone(TimeZone.getTimeZone(intent.getStringExtra("time-zone")));
-                mCalendar.setTimeInMillis(System.currentTimeMillis());
+            public void run() {
+                int section = mStartupTrace.begin("Engine.deferredStart");
+                mStarted = true;
+                mSprites.start();
+                reportDisplay();
+                if (isVisible()) {
+                    onVisible();
+                }
+                mStartupTrace.end(section);
             }
         };
-        boolean mRegisteredTimeZoneReceiver = false;
 
+        final Config.OnConfigChangedListener mConfigChangedListener = new Config.OnConfigChangedListener() {
+            @Override
+            public void onConfigChanged(Config config, ConfigSnapshot snapshot, List<ConfigKey> changedKeys) {
+                invalidate();
+            }
+        };
 
-        Paint mBitmapPaint;
-        Paint mDrawPaint;
+        final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                mRenderer.setTimeZone(TimeZone.getTimeZone(intent.getStringExtra("time-zone")));
+            }
+        };
+        /**
+         * 電池の状態が変わるたびに届く. 描画中には読みに行かない.
+         */
+        final BroadcastReceiver mBatteryReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                updateBatteryState(intent);
+            }
+        };
+        private final BatterySource mBatterySource = new BatterySource();
+        boolean mRegisteredReceivers = false;
 
         boolean mAmbient;
-        Calendar mCalendar;
         int mTapCount;
 
-        private Hand mHour;
-        private Hand mMinute;
-        private Bitmap mBackground;
-        private int mWidth;
-        private int mHeight;
-        private float mCenterX;
-        private float mCenterY;
-        private float mSecLength;
-        private float mHoleRadius;
-        private float mBackgroundTop;
-        private float mBackgroundLeft;
-        private float mScale;
-        private Matrix mMatrix;
+        private AssetLoader mAssetLoader;
+        private MemoryGovernor mMemoryGovernor;
+        private final PowerGovernor mPowerGovernor = new PowerGovernor();
+        private PowerManager.WakeLock mWakeLock;
+        private PrerenderedSprites mSprites;
+        boolean mIsRound;
+        int mSurfaceWidth;
+        int mSurfaceHeight;
         private Config mConfig;
         /**
          * Whether the display supports fewer bits for each color in ambient mode. When true, we
@@ -106,14 +167,41 @@ public class MyWatchFace extends CanvasWatchFaceService {
          */
         boolean mLowBitAmbient;
 
+        Engine(StartupTrace startupTrace) {
+            mStartupTrace = startupTrace;
+        }
+
         @Override
         public void onApplyWindowInsets(WindowInsets insets) {
             super.onApplyWindowInsets(insets);
-            boolean isRound = insets.isRound();
+            mIsRound = insets.isRound();
+            mRenderer.setRound(mIsRound);
+            reportDisplay();
+        }
+
+        @Override
+        public void onSurfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+            super.onSurfaceChanged(holder, format, width, height);
+            mSurfaceWidth = width;
+            mSurfaceHeight = height;
+            // 最初のフレームを待たずに背景と針の組み立てを始める
+            mRenderer.prepare(width, height);
+            reportDisplay();
+        }
+
+        /**
+         * 画面の大きさと形をスマートフォンに知らせ、拡大縮小済みの画像を作ってもらう.
+         * スマートフォンとつなぐのは最初のフレームの後にする.
+         */
+        private void reportDisplay() {
+            if (mStarted && mSurfaceWidth > 0 && mSurfaceHeight > 0) {
+                mSprites.setDisplay(new DisplaySpec(mSurfaceWidth, mSurfaceHeight, mIsRound));
+            }
         }
 
         @Override
         public void onCreate(SurfaceHolder holder) {
+            int section = mStartupTrace.begin("Engine.onCreate");
             super.onCreate(holder);
 
             setWatchFaceStyle(new WatchFaceStyle.Builder(MyWatchFace.this)
@@ -125,26 +213,55 @@ public class MyWatchFace extends CanvasWatchFaceService {
 
             Resources resources = MyWatchFace.this.getResources();
 
-            mBitmapPaint = new Paint();
-            mBitmapPaint.setColor(resources.getColor(R.color.background));
-            mBitmapPaint.setFilterBitmap(true);
-            mDrawPaint = new Paint();
-            mDrawPaint.setColor(resources.getColor(R.color.analog_hands));
-            mDrawPaint.setStrokeWidth(resources.getDimension(R.dimen.analog_hand_stroke));
-            mDrawPaint.setAntiAlias(true);
-            mDrawPaint.setStrokeCap(Paint.Cap.ROUND);
-            mCalendar = Calendar.getInstance();
-            mMatrix = new Matrix();
-
-            mConfig = new Config(MyWatchFace.this, null);
-            mConfig.connect();
-
+            int rendererSection = mStartupTrace.begin("Engine.onCreate.renderer");
+            mRenderer = new WatchFaceRenderer(resources, INTERACTIVE_UPDATE_RATE_MS);
+            mRenderer.getTextLayer().addLabel(mBatterySource, TextLayer.MINUTE_MS,
+                    WatchFaceRenderer.DESIGNED_SIZE / 2f, 150f, 32f);
+            mStartupTrace.end(rendererSection);
+            // スマートフォンとはまだつながない. GoogleApiClientも最初に使う時まで作らない
+            mSprites = new PrerenderedSprites(new File(getCacheDir(), "sprites"),
+                    new WearableSpriteChannel(WearableConnection.getInstance(MyWatchFace.this)),
+                    new PrerenderedSprites.OnSpritesReceivedListener() {
+                        @Override
+                        public void onSpritesReceived(DisplaySpec spec) {
+                            // 届いたものに差し替える
+                            mRenderer.reloadAssets();
+                        }
+                    });
+            HandSpriteCache.getInstance().resize(HAND_SPRITE_CACHE_BYTES);
+            mAssetLoader = new AssetLoader(resources, HAND_SPRITE_STEPS, mSprites, new AssetLoader.OnAssetsReadyListener() {
+                @Override
+                public void onAssetsReady() {
+                    invalidate();
+                }
+            });
+            mRenderer.setAssetLoader(mAssetLoader);
+            mMemoryGovernor = new MemoryGovernor(mRenderer);
+            mWakeLock = ((PowerManager) getSystemService(POWER_SERVICE))
+                    .newWakeLock(PowerManager.SCREEN_BRIGHT_WAKE_LOCK, WAKE_LOCK_TAG);
+            mWakeLock.setReferenceCounted(false);
+            registerComponentCallbacks(mMemoryGovernor);
+            mFrameScheduler = new FrameScheduler(this, mRenderer.getMotionCurve(), INTERACTIVE_UPDATE_RATE_MS);
+
+            // 設定が変わったらすぐに描き直す. 最初のフレームは保存してある設定で描き、同期は後から始める
+            int configSection = mStartupTrace.begin("Engine.onCreate.config");
+            mConfig = new Config(MyWatchFace.this, mConfigChangedListener);
+            mStartupTrace.end(configSection);
+            mStartupTrace.end(section);
         }
 
 
         @Override
         public void onDestroy() {
-            mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            mHandler.removeCallbacks(mDeferredStart);
+            mFrameScheduler.stop();
+            releaseWakeLock();
+            unregisterComponentCallbacks(mMemoryGovernor);
+            mMemoryGovernor.stop();
+            mAssetLoader.quit();
+            mSprites.stop();
+            mRenderer.release();
+            mConfig.removeOnConfigChangedListener(mConfigChangedListener);
             mConfig.disconnect();
             mConfig = null;
             super.onDestroy();
@@ -154,11 +271,13 @@ public class MyWatchFace extends CanvasWatchFaceService {
         public void onPropertiesChanged(Bundle properties) {
             super.onPropertiesChanged(properties);
             mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
+            mRenderer.setLowBitAmbient(mLowBitAmbient);
         }
 
         @Override
         public void onTimeTick() {
             super.onTimeTick();
+            mMemoryGovernor.enforceBudget();
             invalidate();
         }
 
@@ -169,14 +288,8 @@ public class MyWatchFace extends CanvasWatchFaceService {
                 mAmbient = inAmbientMode;
                 if (mAmbient) {
                     setWakeLock();
-                    mConfig.connect();
-                } else {
-                    mConfig.disconnect();
-                }
-                if (mLowBitAmbient) {
-                    mDrawPaint.setAntiAlias(!inAmbientMode);
-                    mBitmapPaint.setFilterBitmap(!inAmbientMode);
                 }
+                mRenderer.setAmbient(inAmbientMode);
                 invalidate();
             }
             // Whether the timer should be running depends on whether we're visible (as well as
@@ -190,7 +303,6 @@ public class MyWatchFace extends CanvasWatchFaceService {
          */
         @Override
         public void onTapCommand(int tapType, int x, int y, long eventTime) {
-            Resources resources = MyWatchFace.this.getResources();
             switch (tapType) {
                 case TAP_TYPE_TOUCH:
                     // The user has started touching the screen.
@@ -200,113 +312,127 @@ public class MyWatchFace extends CanvasWatchFaceService {
                     break;
                 case TAP_TYPE_TAP:
                     // The user has completed the tap gesture.
-                    mConfig.setIsSmooth(!mConfig.isSmooth());
+                    if (y < mRenderer.getHeight() / 4) {
+                        // 画面上部のタップは計測値の表示切り替え
+                        mRenderer.toggleFrameStats();
+                    } else {
+                        mConfig.setIsSmooth(!mConfig.isSmooth());
+                    }
                     break;
             }
             invalidate();
         }
 
 
-        private Bitmap createScaledBitmap(Resources resources, int id) {
-            Bitmap original = ((BitmapDrawable) (resources.getDrawable(id))).getBitmap();
-            Bitmap scaled = Bitmap.createScaledBitmap(original, (int) (original.getWidth() * mScale),
-                    (int) (original.getHeight() * mScale), true);
-            return scaled;
-        }
-
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-            mCalendar.setTimeInMillis(System.currentTimeMillis());
-            boolean isSizeChanged = canvas.getWidth() != mWidth || canvas.getHeight() != mHeight;
-            if (isSizeChanged) {
-                mWidth = canvas.getWidth();
-                mHeight = canvas.getHeight();
-                mCenterX = mWidth / 2;
-                mCenterY = mHeight / 2;
-                int longSize = Math.max(canvas.getWidth(), canvas.getHeight());
-                mScale = longSize / DESIGNED_SIZE;
-                mDrawPaint.setTextSize(48f * mScale);
-                mBackgroundLeft = (mWidth - longSize) / 2f;
-                mBackgroundTop = (mHeight - longSize) / 2f;
-
-                mSecLength = (int) (200f * mScale);
-
-                // 中央穴の半径
-                mHoleRadius = mScale * 12f;
-
-                // 縦横の取得
-                Resources resources = getResources();
-                mHour = new Hand(resources, R.drawable.hour, R.drawable.hour, mScale, mBackgroundTop, mBackgroundLeft, 244f, 80f, 256f, 256f);
-                mMinute = new Hand(resources, R.drawable.minute, R.drawable.minute, mScale, mBackgroundTop, mBackgroundLeft, 242f, 54f, 256f, 256f);
-
+            boolean first = !mStartupTrace.isFirstFrameDrawn();
+            int section = first ? mStartupTrace.begin("Engine.firstDraw") : -1;
+            // 設定は一度だけ読み、このフレームの間は同じ値を使う
+            ConfigSnapshot config = mConfig.getSnapshot();
+            long now = System.currentTimeMillis();
+            int stage = mPowerGovernor.getStage();
+            // 電池が減ってきたら設定より控えめな動きにする
+            mRenderer.setMotion(stage == PowerGovernor.STAGE_SMOOTH ? config.getInt(Config.MOTION) : Config.MOTION_TICK);
+            mRenderer.setShowSecondHand(stage != PowerGovernor.STAGE_MINUTE);
+            mRenderer.setSecondHandColor(config.getColor(Config.SECOND_HAND_COLOR));
+            mRenderer.setHandStyle(config.getInt(Config.HAND_STYLE));
+            mFrameScheduler.setCurve(mRenderer.getMotionCurve());
+            mRenderer.draw(canvas, now);
+            mPowerGovernor.onFrameRendered(now);
+            if (first) {
+                mStartupTrace.end(section);
             }
-
-            if (isSizeChanged
-                    || mBackground == null || mBackground.isRecycled()
-                    || mHour == null || mHour.isRecycled()
-                    || mMinute == null || mMinute.isRecycled()) {
-                Resources resources = getResources();
-                mBackground = createScaledBitmap(resources, R.drawable.background);
-                mHour.rescaleBitmap(resources);
-                mMinute.rescaleBitmap(resources);
+            if (mStartupTrace.onFrameDrawn(mRenderer.isLastFrameComplete())) {
+                // 残りの準備は最初のフレームが画面に出てから
+                mHandler.post(mDeferredStart);
             }
+        }
 
-            // Draw the background.
-            if (isInAmbientMode()) {
-                canvas.drawColor(Color.BLACK);
-            } else {
-                canvas.drawBitmap(mBackground, mBackgroundLeft, mBackgroundTop, mBitmapPaint);
-            }
-            float hourRotate = (mCalendar.get(Calendar.HOUR) + mCalendar.get(Calendar.MINUTE) / 60f) * 30;
-            mHour.draw(canvas, mBitmapPaint, mMatrix, hourRotate, mAmbient);
-            float minuteRotate = (mCalendar.get(Calendar.MINUTE) + mCalendar.get(Calendar.SECOND) / 60f) * 6;
-            mMinute.draw(canvas, mBitmapPaint, mMatrix, minuteRotate, mAmbient);
-
-            if (!mAmbient) {
-                float secRot;
-                if (mConfig.isSmooth()) {
-                    secRot = (mCalendar.get(Calendar.SECOND) + mCalendar.get(Calendar.MILLISECOND) / 1000f) / 30f * (float) Math.PI;
-                } else {
-                    int milliSecond = mCalendar.get(Calendar.MILLISECOND);
-                    if (milliSecond <= 800) {
-                        secRot = mCalendar.get(Calendar.SECOND) / 30f * (float) Math.PI;
-                    } else {
-                        float shift = (mCalendar.get(Calendar.MILLISECOND) - 800) / 200f;
+        @Override
+        public boolean isFrameChanged(long timeMs) {
+            return mRenderer.isFrameChanged(timeMs);
+        }
 
-                        secRot = (mCalendar.get(Calendar.SECOND) + shift * shift) / 30f * (float) Math.PI;
-                    }
-                }
-                float secX = (float) Math.sin(secRot) * mSecLength;
-                float secY = (float) -Math.cos(secRot) * mSecLength;
-                canvas.drawLine(mCenterX, mCenterY, mCenterX + secX, mCenterY + secY, mDrawPaint);
-            }
-            canvas.drawCircle(mCenterX, mCenterY, mHoleRadius, mDrawPaint);
-            String text = "HELLO_TEXT";
-            float x = mCenterX - (mDrawPaint.measureText(text) / 2f);
-            canvas.drawText(text, x, 400 * mScale, mDrawPaint);
+        @Override
+        public void onFrame() {
+            invalidate();
+        }
 
+        @Override
+        protected void dump(String prefix, FileDescriptor fd, PrintWriter out, String[] args) {
+            super.dump(prefix, fd, out, args);
+            mRenderer.dump(out, prefix);
+            mStartupTrace.dump(out, prefix + "  ");
+            mMemoryGovernor.dump(out, prefix + "  ");
+            mSharedCacheTrimmer.dump(out, prefix + "  ");
+            ScaledBitmapPool.getInstance().dump(out, prefix + "  ");
+            HandSpriteCache.getInstance().dump(out, prefix + "  ");
+            mPowerGovernor.dump(out, prefix + "  ", System.currentTimeMillis());
+            out.print(prefix);
+            out.println("  wakeups=" + mFrameScheduler.getWakeupCount()
+                    + " skipped=" + mFrameScheduler.getSkippedCount());
+            WearableConnection.getInstance(MyWatchFace.this).dump(out, prefix + "  ");
+            out.print(prefix);
+            out.println("  prerenderedSheets=" + mSprites.getReceivedCount()
+                    + " prerenderedBytes=" + mSprites.getReceivedBytes());
         }
 
         private static final String WAKE_LOCK_TAG = "my_watch_tag";
         private static final long WAKE_LOCK_TIME = 20000l;
 
+        /**
+         * 画面を明るいまま保つ. 一時間あたりの予算と電池の状態が許す範囲でだけ持つ.
+         */
         private void setWakeLock() {
-            ((PowerManager) getSystemService(POWER_SERVICE)).newWakeLock(PowerManager.SCREEN_BRIGHT_WAKE_LOCK, WAKE_LOCK_TAG).acquire(WAKE_LOCK_TIME);
+            long grantedMs = mPowerGovernor.requestWakeLock(System.currentTimeMillis(), WAKE_LOCK_TIME);
+            if (grantedMs > 0) {
+                mWakeLock.acquire(grantedMs);
+            }
+        }
+
+        private void releaseWakeLock() {
+            if (mWakeLock.isHeld()) {
+                mWakeLock.release();
+            }
+            mPowerGovernor.onWakeLockReleased(System.currentTimeMillis());
+        }
+
+        /**
+         * 届いた電池の状態を残量の表示に渡し、描き方の段階が変わったらタイマーを合わせる.
+         */
+        private void updateBatteryState(Intent battery) {
+            int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+            int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+            if (level < 0 || scale <= 0) {
+                mBatterySource.setPercent(-1);
+                return;
+            }
+            mBatterySource.setPercent(level * 100 / scale);
+            boolean charging = battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+            float temperature = battery.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, 0) / 10f;
+            if (mPowerGovernor.onBatteryChanged(level * 100 / scale, charging, temperature)) {
+                updateTimer();
+                invalidate();
+            }
         }
 
         @Override
         public void onVisibilityChanged(boolean visible) {
             super.onVisibilityChanged(visible);
+            mMemoryGovernor.onVisibilityChanged(visible);
 
             if (visible) {
-                registerReceiver();
-                // Update time zone in case it changed while we weren't visible.
-                mCalendar.setTimeZone(TimeZone.getDefault());
-                mConfig.connect();
+                if (mStarted) {
+                    onVisible();
+                }
                 setWakeLock();
             } else {
                 unregisterReceiver();
-                mConfig.disconnect();
+                releaseWakeLock();
+                if (mStarted) {
+                    mConfig.disconnect();
+                }
             }
 
             // Whether the timer should be running depends on whether we're visible (as well as
@@ -314,73 +440,55 @@ public class MyWatchFace extends CanvasWatchFaceService {
             updateTimer();
         }
 
+        /**
+         * 見えるようになった時の準備. 最初のフレームより前に見えるようになった場合は、描いた後に呼ぶ.
+         */
+        private void onVisible() {
+            registerReceiver();
+            // Update time zone in case it changed while we weren't visible.
+            mRenderer.setTimeZone(TimeZone.getDefault());
+            mConfig.connect();
+        }
+
         private void registerReceiver() {
-            if (mRegisteredTimeZoneReceiver) {
+            if (mRegisteredReceivers) {
                 return;
             }
-            mRegisteredTimeZoneReceiver = true;
+            mRegisteredReceivers = true;
             IntentFilter filter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
             MyWatchFace.this.registerReceiver(mTimeZoneReceiver, filter);
+            // stickyなので、登録するとすぐに今の状態が届く
+            MyWatchFace.this.registerReceiver(mBatteryReceiver, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
         }
 
         private void unregisterReceiver() {
-            if (!mRegisteredTimeZoneReceiver) {
+            if (!mRegisteredReceivers) {
                 return;
             }
-            mRegisteredTimeZoneReceiver = false;
+            mRegisteredReceivers = false;
             MyWatchFace.this.unregisterReceiver(mTimeZoneReceiver);
+            MyWatchFace.this.unregisterReceiver(mBatteryReceiver);
         }
 
         /**
-         * Starts the {@link #mUpdateTimeHandler} timer if it should be running and isn't currently
+         * Starts the {@link #mFrameScheduler} timer if it should be running and isn't currently
          * or stops it if it shouldn't be running but currently is.
          */
         private void updateTimer() {
-            mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
             if (shouldTimerBeRunning()) {
-                mUpdateTimeHandler.sendEmptyMessage(MSG_UPDATE_TIME);
+                mFrameScheduler.start();
+            } else {
+                mFrameScheduler.stop();
             }
         }
 
         /**
-         * Returns whether the {@link #mUpdateTimeHandler} timer should be running. The timer should
+         * Returns whether the {@link #mFrameScheduler} timer should be running. The timer should
          * only run when we're visible and in interactive mode.
+         * 電池が少なく分単位でしか描かない間は、onTimeTickに任せて止めておく.
          */
         private boolean shouldTimerBeRunning() {
-            return isVisible() && !isInAmbientMode();
-        }
-
-        /**
-         * Handle updating the time periodically in interactive mode.
-         */
-        private void handleUpdateTimeMessage() {
-            invalidate();
-            if (shouldTimerBeRunning()) {
-                long timeMs = System.currentTimeMillis();
-                long delayMs = INTERACTIVE_UPDATE_RATE_MS
-                        - (timeMs % INTERACTIVE_UPDATE_RATE_MS);
-                mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
-            }
-        }
-    }
-
-    private static class EngineHandler extends Handler {
-        private final WeakReference<MyWatchFace.Engine> mWeakReference;
-
-        public EngineHandler(MyWatchFace.Engine reference) {
-            mWeakReference = new WeakReference<>(reference);
-        }
-
-        @Override
-        public void handleMessage(Message msg) {
-            MyWatchFace.Engine engine = mWeakReference.get();
-            if (engine != null) {
-                switch (msg.what) {
-                    case MSG_UPDATE_TIME:
-                        engine.handleUpdateTimeMessage();
-                        break;
-                }
-            }
+            return isVisible() && !isInAmbientMode() && mPowerGovernor.getStage() != PowerGovernor.STAGE_MINUTE;
         }
     }
 }
@@ -0,0 +1,221 @@
+package org.firespeed.myapplication;
+
+import java.io.PrintWriter;
+
+/**
+ * 電池残量と温度に合わせて、インタラクティブモードの描き方を段階的に落とす.
+ * 秒針を滑らかに動かす → 秒の頭で刻む → 分が変わった時だけ描く、の順に落とし、
+ * 戻す時は少し余裕ができてからにする(閾値の付近で行ったり来たりしないように).
+ * あわせてウェイクロックを一時間あたりの予算の範囲でだけ許し、
+ * 描いたフレーム数とウェイクロックの時間から一時間あたりの消費電力量を見積もる.
+ * メインスレッドから使う.
+ */
+public class PowerGovernor {
+    /**
+     * 設定どおりに秒針を動かす.
+     */
+    public static final int STAGE_SMOOTH = 0;
+    /**
+     * 秒針は秒の頭で刻むだけにして、一秒に一度しか起きない.
+     */
+    public static final int STAGE_TICK = 1;
+    /**
+     * 秒針を描かず、分が変わった時だけ描く.
+     */
+    public static final int STAGE_MINUTE = 2;
+    private static final String[] STAGE_NAMES = {"smooth", "tick", "minute"};
+
+    /**
+     * 各段階に入る電池残量(%). これ以下になったらその段階に落とす.
+     */
+    private static final int[] LEVEL_THRESHOLDS = {Integer.MAX_VALUE, 30, 15};
+    /**
+     * 各段階に入る電池の温度(℃). これ以上になったらその段階に落とす.
+     */
+    private static final float[] TEMPERATURE_THRESHOLDS = {Float.NEGATIVE_INFINITY, 40f, 45f};
+    /**
+     * 段階を戻すのに必要な余裕.
+     */
+    private static final int LEVEL_HYSTERESIS = 5;
+    private static final float TEMPERATURE_HYSTERESIS = 2f;
+
+    public static final long HOUR_MS = 60 * 60 * 1000;
+    /**
+     * 一時間あたりにウェイクロックを持ってよい時間の既定値.
+     */
+    public static final long DEFAULT_WAKE_LOCK_BUDGET_MS = 60 * 1000;
+
+    /**
+     * 消費電力の見積もりの係数. 実機で測って合わせること.
+     * 一フレーム描くのにかかるエネルギー(mJ).
+     */
+    public static final float FRAME_ENERGY_MJ = 0.6f;
+    /**
+     * 画面を明るいまま保っている間の電力(mW).
+     */
+    public static final float WAKE_LOCK_POWER_MW = 70f;
+
+    private long mWakeLockBudgetMs = DEFAULT_WAKE_LOCK_BUDGET_MS;
+    private int mStage = STAGE_SMOOTH;
+    private int mBatteryPercent = 100;
+    private boolean mCharging;
+    private float mTemperature;
+    private int mStageChangeCount;
+
+    /**
+     * 今の一時間の集計. 一時間たったら前の一時間の値として残す.
+     */
+    private long mWindowStartMs = Long.MIN_VALUE;
+    private long mWindowFrames;
+    private long mWindowWakeLockMs;
+    private long mWindowDeniedMs;
+    private long mLastWindowFrames = -1;
+    private long mLastWindowWakeLockMs;
+    private long mWakeLockUntilMs;
+
+    public void setWakeLockBudgetMs(long wakeLockBudgetMs) {
+        mWakeLockBudgetMs = wakeLockBudgetMs;
+    }
+
+    public int getStage() {
+        return mStage;
+    }
+
+    /**
+     * 電池の状態を受け取り、描き方の段階を決め直す.
+     *
+     * @param percent     電池残量(%)
+     * @param charging    充電中かどうか. 充電中は落とさない
+     * @param temperature 電池の温度(℃)
+     * @return 段階が変わった場合はtrue
+     */
+    public boolean onBatteryChanged(int percent, boolean charging, float temperature) {
+        mBatteryPercent = percent;
+        mCharging = charging;
+        mTemperature = temperature;
+        int stage = charging ? STAGE_SMOOTH : evaluate(percent, temperature, mStage);
+        if (stage == mStage) {
+            return false;
+        }
+        mStage = stage;
+        mStageChangeCount++;
+        return true;
+    }
+
+    /**
+     * 今の段階から、落とすべきか戻してよいかを決める.
+     */
+    static int evaluate(int percent, float temperature, int current) {
+        int stage = STAGE_SMOOTH;
+        for (int i = STAGE_MINUTE; i > STAGE_SMOOTH; i--) {
+            if (percent <= LEVEL_THRESHOLDS[i] || temperature >= TEMPERATURE_THRESHOLDS[i]) {
+                stage = i;
+                break;
+            }
+        }
+        if (stage >= current) {
+            return stage;
+        }
+        // 戻すのは、今の段階の閾値から十分に離れてから
+        while (current > stage) {
+            if (percent > LEVEL_THRESHOLDS[current] + LEVEL_HYSTERESIS
+                    && temperature < TEMPERATURE_THRESHOLDS[current] - TEMPERATURE_HYSTERESIS) {
+                current--;
+            } else {
+                break;
+            }
+        }
+        return current;
+    }
+
+    private void roll(long nowMs) {
+        if (mWindowStartMs == Long.MIN_VALUE) {
+            mWindowStartMs = nowMs;
+        } else if (nowMs - mWindowStartMs >= HOUR_MS || nowMs < mWindowStartMs) {
+            mLastWindowFrames = mWindowFrames;
+            mLastWindowWakeLockMs = mWindowWakeLockMs;
+            mWindowStartMs = nowMs;
+            mWindowFrames = 0;
+            mWindowWakeLockMs = 0;
+            mWindowDeniedMs = 0;
+        }
+    }
+
+    public void onFrameRendered(long nowMs) {
+        roll(nowMs);
+        mWindowFrames++;
+    }
+
+    /**
+     * ウェイクロックを持ちたい時に呼ぶ. 予算の残りと今の段階に合わせて、持ってよい時間を返す.
+     * 既に持っている時間と重なる分は数えない.
+     *
+     * @return 持ってよい時間. 0なら持たないこと
+     */
+    public long requestWakeLock(long nowMs, long requestedMs) {
+        roll(nowMs);
+        long wanted = mStage == STAGE_SMOOTH ? requestedMs : mStage == STAGE_TICK ? requestedMs / 4 : 0;
+        long remaining = Math.max(0, mWakeLockBudgetMs - mWindowWakeLockMs);
+        long heldUntil = Math.max(nowMs, mWakeLockUntilMs);
+        long extra = Math.max(0, nowMs + wanted - heldUntil);
+        long granted = Math.min(extra, remaining);
+        mWindowDeniedMs += (requestedMs - wanted) + (extra - granted);
+        if (granted == 0) {
+            return 0;
+        }
+        mWindowWakeLockMs += granted;
+        mWakeLockUntilMs = heldUntil + granted;
+        return mWakeLockUntilMs - nowMs;
+    }
+
+    /**
+     * ウェイクロックを早めに放した時に呼ぶ. 使わなかった分を予算に戻す.
+     */
+    public void onWakeLockReleased(long nowMs) {
+        roll(nowMs);
+        if (mWakeLockUntilMs > nowMs) {
+            mWindowWakeLockMs = Math.max(0, mWindowWakeLockMs - (mWakeLockUntilMs - nowMs));
+            mWakeLockUntilMs = nowMs;
+        }
+    }
+
+    /**
+     * 一時間あたりの消費電力量の見積もり(mWh). 一時間分の集計があればそれを、なければ今の集計を一時間に延ばして使う.
+     */
+    public float getEstimatedMilliwattHours(long nowMs) {
+        if (mWindowStartMs == Long.MIN_VALUE) {
+            return 0;
+        }
+        long frames;
+        long wakeLockMs;
+        if (mLastWindowFrames >= 0) {
+            frames = mLastWindowFrames;
+            wakeLockMs = mLastWindowWakeLockMs;
+        } else {
+            long elapsed = Math.max(1, nowMs - mWindowStartMs);
+            frames = mWindowFrames * HOUR_MS / elapsed;
+            wakeLockMs = mWindowWakeLockMs * HOUR_MS / elapsed;
+        }
+        float millijoules = frames * FRAME_ENERGY_MJ + wakeLockMs / 1000f * WAKE_LOCK_POWER_MW;
+        return millijoules / 3600f;
+    }
+
+    public long getWindowFrames() {
+        return mWindowFrames;
+    }
+
+    public long getWindowWakeLockMs() {
+        return mWindowWakeLockMs;
+    }
+
+    public void dump(PrintWriter writer, String prefix, long nowMs) {
+        writer.print(prefix);
+        writer.println("power: stage=" + STAGE_NAMES[mStage] + " battery=" + mBatteryPercent + "%"
+                + (mCharging ? " charging" : "") + " temperature=" + mTemperature
+                + " stageChanges=" + mStageChangeCount);
+        writer.print(prefix);
+        writer.println("framesThisHour=" + mWindowFrames + " wakeLockMsThisHour=" + mWindowWakeLockMs
+                + " deniedMs=" + mWindowDeniedMs + " budgetMs=" + mWakeLockBudgetMs
+                + String.format(" estimated=%.2fmWh/h", getEstimatedMilliwattHours(nowMs)));
+    }
+}
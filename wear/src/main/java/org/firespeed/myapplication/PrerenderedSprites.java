@@ -0,0 +1,215 @@
+package org.firespeed.myapplication;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import org.firespeed.both.DisplaySpec;
+import org.firespeed.both.SpriteChannel;
+import org.firespeed.both.SpriteSheet;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * スマートフォンで拡大縮小済みの背景と針を受け取り、ファイルに置いておく.
+ * {@link AssetLoader}はここからメモリマップしたものを受け取り、なければ自分で拡大縮小する.
+ */
+public class PrerenderedSprites implements SpriteChannel.Listener {
+    private static final String TAG = "PrerenderedSprites";
+
+    public interface OnSpritesReceivedListener {
+        /**
+         * 今の画面向けの画像が届いた. メインスレッドで呼ぶ.
+         */
+        void onSpritesReceived(DisplaySpec spec);
+    }
+
+    private final File mDirectory;
+    private final SpriteChannel mChannel;
+    private final OnSpritesReceivedListener mListener;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private volatile DisplaySpec mDisplay;
+    private int mReceivedCount;
+    private long mReceivedBytes;
+
+    public PrerenderedSprites(File directory, SpriteChannel channel, OnSpritesReceivedListener listener) {
+        mDirectory = directory;
+        mChannel = channel;
+        mListener = listener;
+    }
+
+    public void start() {
+        mChannel.connect(this);
+    }
+
+    public void stop() {
+        mChannel.disconnect();
+    }
+
+    /**
+     * 画面の大きさと形をスマートフォンに知らせる. 同じものは送り直さない.
+     */
+    public void setDisplay(DisplaySpec spec) {
+        if (spec.equals(mDisplay)) {
+            return;
+        }
+        mDisplay = spec;
+        mChannel.reportDisplay(spec);
+    }
+
+    private File getFile(DisplaySpec spec) {
+        return new File(mDirectory, getBaseName(spec) + ".bin");
+    }
+
+    /**
+     * 保存した画像の版を書いておくファイル.
+     */
+    private File getVersionFile(DisplaySpec spec) {
+        return new File(mDirectory, getBaseName(spec) + ".version");
+    }
+
+    private static String getBaseName(DisplaySpec spec) {
+        return "sprites-" + spec.width + "x" + spec.height + (spec.round ? "-round" : "");
+    }
+
+    /**
+     * 指定した大きさと形の画面向けの画像があればメモリマップして返す. なければnullを返す.
+     * ワーカースレッドから呼ぶ.
+     */
+    public SpriteSheet open(int width, int height, boolean round) {
+        DisplaySpec spec = mDisplay;
+        if (spec == null || spec.width != width || spec.height != height || spec.round != round) {
+            return null;
+        }
+        File file = getFile(spec);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            return SpriteSheet.map(file);
+        } catch (IOException e) {
+            Log.w(TAG, "broken sprite sheet " + file, e);
+            file.delete();
+            return null;
+        }
+    }
+
+    @Override
+    public void onDisplaySpec(DisplaySpec spec) {
+        // 自分で送ったもの
+    }
+
+    /**
+     * 同じ版の画像を保存済みかどうか. つなぐたびに届く同じ画像を読み直さないようにする.
+     */
+    @Override
+    public boolean hasSpriteSheet(DisplaySpec spec, String version) {
+        return version != null && getFile(spec).exists() && version.equals(readVersion(spec));
+    }
+
+    private String readVersion(DisplaySpec spec) {
+        File file = getVersionFile(spec);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try {
+                return in.readUTF();
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void writeVersion(DisplaySpec spec, String version) {
+        File file = getVersionFile(spec);
+        if (version == null) {
+            file.delete();
+            return;
+        }
+        try {
+            File temp = File.createTempFile("sprites", ".tmp", mDirectory);
+            DataOutputStream out = new DataOutputStream(new FileOutputStream(temp));
+            try {
+                out.writeUTF(version);
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(file)) {
+                temp.delete();
+            }
+        } catch (IOException e) {
+            // 次につないだ時に読み直すだけなので無視する
+            Log.w(TAG, "failed to save sprite sheet version", e);
+        }
+    }
+
+    @Override
+    public void onSpriteSheet(final DisplaySpec spec, String version, InputStream stream) {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            return;
+        }
+        // 書き終わってから置き換え、読んでいる途中のファイルを壊さない.
+        // 一時ファイルはEngineごとに別にし、同時に受け取った時に書き込みが混ざらないようにする
+        File temp;
+        try {
+            temp = File.createTempFile("sprites", ".tmp", mDirectory);
+        } catch (IOException e) {
+            Log.w(TAG, "failed to create temp file", e);
+            return;
+        }
+        File file = getFile(spec);
+        long bytes = 0;
+        try {
+            FileOutputStream out = new FileOutputStream(temp);
+            try {
+                byte[] buffer = new byte[64 * 1024];
+                int length;
+                while ((length = stream.read(buffer)) > 0) {
+                    out.write(buffer, 0, length);
+                    bytes += length;
+                }
+            } finally {
+                out.close();
+            }
+            if (!spec.equals(SpriteSheet.map(temp).getSpec()) || !temp.renameTo(file)) {
+                temp.delete();
+                return;
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "failed to save sprite sheet", e);
+            temp.delete();
+            return;
+        }
+        writeVersion(spec, version);
+        synchronized (this) {
+            mReceivedCount++;
+            mReceivedBytes += bytes;
+        }
+        if (spec.equals(mDisplay)) {
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    mListener.onSpritesReceived(spec);
+                }
+            });
+        }
+    }
+
+    public synchronized int getReceivedCount() {
+        return mReceivedCount;
+    }
+
+    public synchronized long getReceivedBytes() {
+        return mReceivedBytes;
+    }
+}
@@ -0,0 +1,51 @@
+// PrescaleAssetsが生成したファイル. 手で編集しないこと.
+package org.firespeed.myapplication;
+
+/**
+ * ビルド時に拡大縮小を済ませた背景と針のassets内の置き場所を、画面の大きさと形から引く.
+ */
+final class PrescaledAssets {
+    static final String BACKGROUND = "background.png";
+    static final String HOUR = "hour.png";
+    static final String MINUTE = "minute.png";
+
+    private PrescaledAssets() {
+    }
+
+    /**
+     * 指定した画面向けのディレクトリ. 用意していない画面ではnullを返す.
+     */
+    static String find(int width, int height, boolean round) {
+        if (round) {
+            if (width == 320 && height == 320) {
+                return "prescaled/320x320-round";
+            }
+            if (width == 320 && height == 290) {
+                return "prescaled/320x290-round";
+            }
+            if (width == 360 && height == 360) {
+                return "prescaled/360x360-round";
+            }
+            if (width == 360 && height == 326) {
+                return "prescaled/360x326-round";
+            }
+            if (width == 390 && height == 390) {
+                return "prescaled/390x390-round";
+            }
+            if (width == 400 && height == 400) {
+                return "prescaled/400x400-round";
+            }
+            if (width == 454 && height == 454) {
+                return "prescaled/454x454-round";
+            }
+        } else {
+            if (width == 280 && height == 280) {
+                return "prescaled/280x280";
+            }
+            if (width == 320 && height == 320) {
+                return "prescaled/320x320";
+            }
+        }
+        return null;
+    }
+}
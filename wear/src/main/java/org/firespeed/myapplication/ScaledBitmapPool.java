@@ -0,0 +1,348 @@
+package org.firespeed.myapplication;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import org.firespeed.both.DisplaySpec;
+import org.firespeed.both.SpriteRenderer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * プロセス内の全Engine・Handで共有する拡大縮小済みビットマップのプール.
+ * (リソースID, 拡大率, Bitmap.Config)ごとに一枚だけデコードし、参照カウントで管理する.
+ * 参照がなくなったビットマップはすぐには捨てず、次のデコードでinBitmapとして再利用する.
+ * 画面に合わせて切り抜いた背景も、(画面の大きさ, 形)ごとに一枚だけ作って共有する.
+ * ビルド時に拡大縮小を済ませたassetsの画像は、パスごとに一枚だけデコードして共有する.
+ */
+public class ScaledBitmapPool {
+    /**
+     * 拡大率をinDensity/inTargetDensityで表すための基準値.
+     */
+    private static final int DENSITY_BASE = 10000;
+    /**
+     * 再利用待ちとして保持しておくビットマップの上限.
+     */
+    private static final int MAX_REUSABLE = 3;
+
+    private static ScaledBitmapPool sInstance;
+
+    private final Map<Key, Entry> mEntries = new HashMap<>();
+    private final Map<Bitmap, Entry> mEntriesByBitmap = new IdentityHashMap<>();
+    private final List<Bitmap> mReusable = new ArrayList<>();
+
+    private int mHitCount;
+    private int mMissCount;
+    private int mReuseCount;
+    private long mBytesInUse;
+
+    public static synchronized ScaledBitmapPool getInstance() {
+        if (sInstance == null) {
+            sInstance = new ScaledBitmapPool();
+        }
+        return sInstance;
+    }
+
+    /**
+     * 拡大縮小済みのビットマップを取得する. 使い終わったら{@link #release}を呼ぶこと.
+     */
+    public synchronized Bitmap acquire(Resources resources, int id, float scale, Bitmap.Config config) {
+        return acquire(resources, new Key(id, scale, config, null, null), null);
+    }
+
+    /**
+     * assetsにある拡大縮小済みの画像を、拡大縮小せずにデコードして取得する. 読めなければnullを返す.
+     * 使い終わったら{@link #release}を呼ぶこと.
+     */
+    public synchronized Bitmap acquireAsset(Resources resources, String path) {
+        return acquire(resources, new Key(0, 1f, Bitmap.Config.ARGB_8888, null, path), null);
+    }
+
+    /**
+     * 拡大縮小して画面の大きさに切り抜いた背景を取得する. 丸い画面では見えない四隅を落としてある.
+     * 切り抜く前の背景は持たない. 使い終わったら{@link #release}を呼ぶこと.
+     */
+    public synchronized Bitmap acquireDialBackground(Resources resources, int id, float scale, DisplaySpec spec) {
+        if (!spec.round && spec.width == spec.height) {
+            // 切り抜かないので、拡大縮小しただけのものと同じ
+            return acquire(resources, id, scale, Bitmap.Config.ARGB_8888);
+        }
+        return acquire(resources, new Key(id, scale, Bitmap.Config.ARGB_8888, spec, null), spec);
+    }
+
+    private Bitmap acquire(Resources resources, Key key, DisplaySpec spec) {
+        Entry entry = mEntries.get(key);
+        if (entry != null && !entry.bitmap.isRecycled()) {
+            mHitCount++;
+            entry.refCount++;
+            return entry.bitmap;
+        }
+        if (entry != null) {
+            // 誰かにrecycleされてしまったものは作り直す
+            forget(entry);
+        }
+        mMissCount++;
+        Bitmap bitmap = key.mAssetPath != null
+                ? decodeAsset(resources, key.mAssetPath)
+                : decode(resources, key.mResourceId, Float.intBitsToFloat(key.mScaleBits), key.mConfig);
+        if (bitmap == null) {
+            return null;
+        }
+        if (spec != null) {
+            Bitmap cropped = SpriteRenderer.createDialBackground(bitmap, spec);
+            if (cropped != bitmap) {
+                // 画面より大きい元の背景は再利用待ちにもしない
+                bitmap.recycle();
+                bitmap = cropped;
+            }
+        }
+        entry = new Entry(key, bitmap);
+        mEntries.put(key, entry);
+        mEntriesByBitmap.put(entry.bitmap, entry);
+        mBytesInUse += entry.bitmap.getByteCount();
+        return entry.bitmap;
+    }
+
+    public synchronized void release(Bitmap bitmap) {
+        if (bitmap == null) {
+            return;
+        }
+        Entry entry = mEntriesByBitmap.get(bitmap);
+        if (entry == null) {
+            return;
+        }
+        entry.refCount--;
+        if (entry.refCount > 0) {
+            return;
+        }
+        forget(entry);
+        if (!bitmap.isRecycled() && bitmap.isMutable()) {
+            mReusable.add(bitmap);
+            if (mReusable.size() > MAX_REUSABLE) {
+                mReusable.remove(0).recycle();
+            }
+        } else {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * 再利用待ちのビットマップを全て解放する.
+     */
+    public synchronized void trim() {
+        for (Bitmap bitmap : mReusable) {
+            bitmap.recycle();
+        }
+        mReusable.clear();
+    }
+
+    private void forget(Entry entry) {
+        mEntries.remove(entry.key);
+        mEntriesByBitmap.remove(entry.bitmap);
+        mBytesInUse -= entry.bytes;
+    }
+
+    private Bitmap decode(Resources resources, int id, float scale, Bitmap.Config config) {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(resources, id, bounds);
+        int width = (int) (bounds.outWidth * scale);
+        int height = (int) (bounds.outHeight * scale);
+
+        // 目標の拡大率でデコードさせ、元サイズのビットマップを経由しないようにする
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = config;
+        options.inScaled = true;
+        options.inDensity = DENSITY_BASE;
+        options.inTargetDensity = Math.max(1, Math.round(DENSITY_BASE * scale));
+        options.inMutable = true;
+        Bitmap reusable = findReusable(width, height, config);
+        if (reusable != null) {
+            options.inBitmap = reusable;
+            try {
+                Bitmap bitmap = BitmapFactory.decodeResource(resources, id, options);
+                if (bitmap != null) {
+                    mReuseCount++;
+                    return bitmap;
+                }
+            } catch (IllegalArgumentException e) {
+                // 再利用できなかったので通常のデコードにする
+            }
+            reusable.recycle();
+            options.inBitmap = null;
+        }
+        return BitmapFactory.decodeResource(resources, id, options);
+    }
+
+    private Bitmap decodeAsset(Resources resources, String path) {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        decodeAssetStream(resources, path, bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            return null;
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inScaled = false;
+        options.inMutable = true;
+        Bitmap reusable = findReusable(bounds.outWidth, bounds.outHeight, Bitmap.Config.ARGB_8888);
+        if (reusable != null) {
+            options.inBitmap = reusable;
+            try {
+                Bitmap bitmap = decodeAssetStream(resources, path, options);
+                if (bitmap != null) {
+                    mReuseCount++;
+                    return bitmap;
+                }
+            } catch (IllegalArgumentException e) {
+                // 再利用できなかったので通常のデコードにする
+            }
+            reusable.recycle();
+            options.inBitmap = null;
+        }
+        return decodeAssetStream(resources, path, options);
+    }
+
+    private static Bitmap decodeAssetStream(Resources resources, String path, BitmapFactory.Options options) {
+        InputStream stream = null;
+        try {
+            stream = resources.getAssets().open(path);
+            return BitmapFactory.decodeStream(stream, null, options);
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    // 読み終わっているので無視する
+                }
+            }
+        }
+    }
+
+    private Bitmap findReusable(int width, int height, Bitmap.Config config) {
+        int bytesPerPixel = config == Bitmap.Config.ARGB_8888 ? 4 : config == Bitmap.Config.ALPHA_8 ? 1 : 2;
+        int required = width * height * bytesPerPixel;
+        for (Iterator<Bitmap> iterator = mReusable.iterator(); iterator.hasNext(); ) {
+            Bitmap bitmap = iterator.next();
+            if (bitmap.isRecycled()) {
+                iterator.remove();
+            } else if (bitmap.getConfig() == config && bitmap.getAllocationByteCount() >= required) {
+                iterator.remove();
+                return bitmap;
+            }
+        }
+        return null;
+    }
+
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * inBitmapで既存のメモリを再利用してデコードできた回数.
+     */
+    public synchronized int getReuseCount() {
+        return mReuseCount;
+    }
+
+    /**
+     * 参照されているビットマップのバイト数の合計.
+     */
+    public synchronized long getBytesInUse() {
+        return mBytesInUse;
+    }
+
+    /**
+     * 再利用待ちで保持しているビットマップのバイト数の合計.
+     */
+    public synchronized long getBytesReusable() {
+        long bytes = 0;
+        for (Bitmap bitmap : mReusable) {
+            if (!bitmap.isRecycled()) {
+                bytes += bitmap.getAllocationByteCount();
+            }
+        }
+        return bytes;
+    }
+
+    public synchronized void dump(PrintWriter writer, String prefix) {
+        writer.print(prefix);
+        writer.println("bitmapPool: hits=" + mHitCount + " misses=" + mMissCount + " reuses=" + mReuseCount
+                + " bytesInUse=" + mBytesInUse + " bytesReusable=" + getBytesReusable());
+    }
+
+    private static final class Entry {
+        final Key key;
+        final Bitmap bitmap;
+        final int bytes;
+        int refCount = 1;
+
+        Entry(Key key, Bitmap bitmap) {
+            this.key = key;
+            this.bitmap = bitmap;
+            this.bytes = bitmap.getByteCount();
+        }
+    }
+
+    private static final class Key {
+        private final int mResourceId;
+        private final int mScaleBits;
+        private final Bitmap.Config mConfig;
+        /**
+         * 切り抜いた先の画面. 切り抜かないものはnull.
+         */
+        private final DisplaySpec mSpec;
+        /**
+         * assetsの画像のパス. リソースから作るものはnull.
+         */
+        private final String mAssetPath;
+
+        Key(int resourceId, float scale, Bitmap.Config config, DisplaySpec spec, String assetPath) {
+            mResourceId = resourceId;
+            mScaleBits = Float.floatToIntBits(scale);
+            mConfig = config;
+            mSpec = spec;
+            mAssetPath = assetPath;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return mResourceId == key.mResourceId && mScaleBits == key.mScaleBits && mConfig == key.mConfig
+                    && (mSpec == null ? key.mSpec == null : mSpec.equals(key.mSpec))
+                    && (mAssetPath == null ? key.mAssetPath == null : mAssetPath.equals(key.mAssetPath));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mResourceId;
+            result = 31 * result + mScaleBits;
+            result = 31 * result + mConfig.hashCode();
+            result = 31 * result + (mSpec != null ? mSpec.hashCode() : 0);
+            result = 31 * result + (mAssetPath != null ? mAssetPath.hashCode() : 0);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package org.firespeed.myapplication;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+
+import java.io.PrintWriter;
+
+/**
+ * プロセスで共有している再利用待ちのビットマップと回転済みの針を、onTrimMemoryで一度だけ解放する.
+ * どちらもすぐに作り直せるので、どの段階でも捨てる.
+ * 文字盤ごとの{@link MemoryGovernor}から解放すると、見えなくなった文字盤が
+ * 見えている文字盤の描いている針まで捨ててしまうので、サービスに一つだけ登録する.
+ */
+public class SharedCacheTrimmer implements ComponentCallbacks2 {
+    private final ScaledBitmapPool mPool;
+    private final HandSpriteCache mSpriteCache;
+    private int mTrimCount;
+
+    public SharedCacheTrimmer() {
+        this(ScaledBitmapPool.getInstance(), HandSpriteCache.getInstance());
+    }
+
+    SharedCacheTrimmer(ScaledBitmapPool pool, HandSpriteCache spriteCache) {
+        mPool = pool;
+        mSpriteCache = spriteCache;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        trim();
+    }
+
+    @Override
+    public void onLowMemory() {
+        trim();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    public void trim() {
+        mTrimCount++;
+        mPool.trim();
+        mSpriteCache.evictAll();
+    }
+
+    public int getTrimCount() {
+        return mTrimCount;
+    }
+
+    public void dump(PrintWriter writer, String prefix) {
+        writer.print(prefix);
+        writer.println("shared: trims=" + mTrimCount + " sprites=" + mSpriteCache.size()
+                + " reusable=" + mPool.getBytesReusable());
+    }
+}
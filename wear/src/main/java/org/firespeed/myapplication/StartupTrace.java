@@ -0,0 +1,109 @@
+package org.firespeed.myapplication;
+
+import android.os.Trace;
+
+import java.io.PrintWriter;
+
+/**
+ * サービスの生成から最初のフレームまでを区間に分けて計る.
+ * 区間はsystraceで見えるように{@link Trace}にも書き、dumpで生成からの時刻と長さを出す.
+ * メインスレッドから使う.
+ */
+public class StartupTrace {
+    private static final int MAX_SECTIONS = 16;
+
+    private final long mStartNanos;
+    private final String[] mNames = new String[MAX_SECTIONS];
+    private final long[] mBeginNanos = new long[MAX_SECTIONS];
+    private final long[] mEndNanos = new long[MAX_SECTIONS];
+    private int mCount;
+    private long mFirstFrameNanos = -1;
+    private long mCompleteFrameNanos = -1;
+
+    public StartupTrace() {
+        this(System.nanoTime());
+    }
+
+    /**
+     * @param startNanos 計り始めの時刻. System.nanoTimeの値
+     */
+    public StartupTrace(long startNanos) {
+        mStartNanos = startNanos;
+    }
+
+    /**
+     * 区間を始める. 入れ子にしてよいが、始めたのと逆の順に{@link #end}すること.
+     *
+     * @param name systraceに出す名前
+     * @return {@link #end}に渡す値
+     */
+    public int begin(String name) {
+        Trace.beginSection(name);
+        if (mCount == MAX_SECTIONS) {
+            // 記録は諦めるが、systraceには出す
+            return -1;
+        }
+        mNames[mCount] = name;
+        mBeginNanos[mCount] = System.nanoTime();
+        mEndNanos[mCount] = -1;
+        return mCount++;
+    }
+
+    public void end(int section) {
+        Trace.endSection();
+        if (section >= 0) {
+            mEndNanos[section] = System.nanoTime();
+        }
+    }
+
+    /**
+     * フレームを描き終えた時に呼ぶ. 最初のフレームと、最初に背景と針の画像で描けたフレームの時刻を残す.
+     *
+     * @param complete 背景と針の画像で描けたかどうか. falseなら組み立て中の代わりの描画
+     * @return 最初のフレームだった場合はtrue
+     */
+    public boolean onFrameDrawn(boolean complete) {
+        long now = System.nanoTime();
+        if (complete && mCompleteFrameNanos < 0) {
+            mCompleteFrameNanos = now;
+        }
+        if (mFirstFrameNanos < 0) {
+            mFirstFrameNanos = now;
+            return true;
+        }
+        return false;
+    }
+
+    public boolean isFirstFrameDrawn() {
+        return mFirstFrameNanos >= 0;
+    }
+
+    /**
+     * 生成から最初のフレームを描き終えるまでの時間. まだなら-1.
+     */
+    public long getTimeToFirstFrameNanos() {
+        return mFirstFrameNanos < 0 ? -1 : mFirstFrameNanos - mStartNanos;
+    }
+
+    /**
+     * 生成から背景と針の画像で最初に描き終えるまでの時間. まだなら-1.
+     */
+    public long getTimeToCompleteFrameNanos() {
+        return mCompleteFrameNanos < 0 ? -1 : mCompleteFrameNanos - mStartNanos;
+    }
+
+    private static String toMs(long nanos) {
+        return nanos < 0 ? "-" : String.format("%.1fms", nanos / 1e6);
+    }
+
+    public void dump(PrintWriter writer, String prefix) {
+        writer.print(prefix);
+        writer.println("startup: firstFrame=" + toMs(getTimeToFirstFrameNanos())
+                + " completeFrame=" + toMs(getTimeToCompleteFrameNanos()));
+        for (int i = 0; i < mCount; i++) {
+            writer.print(prefix);
+            writer.println("  " + mNames[i] + " at=" + toMs(mBeginNanos[i] - mStartNanos)
+                    + " took=" + toMs(mEndNanos[i] < 0 ? -1 : mEndNanos[i] - mBeginNanos[i]));
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package org.firespeed.myapplication;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 文字盤に重ねる文字(日付や電池残量など)のレイヤー.
+ * 文字列ごとに一度だけ配置を求めてALPHA_8のビットマップに描いておき、
+ * 以降のフレームではそれを転送するだけにする. 内容か拡大率が変わった時だけ描き直す.
+ * 内容は文字列ごとに決めた間隔でしか問い合わせない.
+ */
+public class TextLayer {
+    public static final long MINUTE_MS = 60 * 1000;
+    public static final long HOUR_MS = 60 * MINUTE_MS;
+
+    public interface Source {
+        /**
+         * 表示する文字列を返す. 描画スレッドから更新間隔ごとに呼ばれる.
+         */
+        String getText(long timeMs, WallClock clock);
+    }
+
+    /**
+     * 一つの文字列. 位置と大きさは背景の画像の座標で持つ.
+     */
+    public static final class Label {
+        private final Source mSource;
+        private final long mIntervalMs;
+        private final float mCenterX;
+        private final float mBaseline;
+        private final float mTextSize;
+        private String mText;
+        private long mNextUpdateMs = Long.MIN_VALUE;
+        private boolean mDirty = true;
+        private Bitmap mBitmap;
+        private float mLeft;
+        private float mTop;
+
+        private Label(Source source, long intervalMs, float centerX, float baseline, float textSize) {
+            mSource = source;
+            mIntervalMs = intervalMs;
+            mCenterX = centerX;
+            mBaseline = baseline;
+            mTextSize = textSize;
+        }
+
+        public String getText() {
+            return mText;
+        }
+    }
+
+    private final List<Label> mLabels = new ArrayList<>();
+    private final Paint mTextPaint;
+    private final Paint mBitmapPaint;
+    private final Paint.FontMetrics mFontMetrics = new Paint.FontMetrics();
+    private float mScale;
+    private float mOffsetLeft;
+    private float mOffsetTop;
+    private int mRenderCount;
+
+    /**
+     * @param color 文字の色
+     */
+    public TextLayer(int color) {
+        mTextPaint = new Paint();
+        mTextPaint.setAntiAlias(true);
+        mBitmapPaint = new Paint();
+        mBitmapPaint.setColor(color);
+    }
+
+    /**
+     * 文字列を加える.
+     *
+     * @param intervalMs 内容を問い合わせる間隔. 現地時刻のこの間隔の区切りで問い合わせる
+     * @param centerX    文字列の中心のX座標
+     * @param baseline   ベースラインのY座標
+     * @param textSize   文字の大きさ
+     */
+    public Label addLabel(Source source, long intervalMs, float centerX, float baseline, float textSize) {
+        Label label = new Label(source, intervalMs, centerX, baseline, textSize);
+        mLabels.add(label);
+        return label;
+    }
+
+    public void removeLabel(Label label) {
+        mLabels.remove(label);
+        if (label.mBitmap != null) {
+            label.mBitmap.recycle();
+            label.mBitmap = null;
+        }
+    }
+
+    public void setColor(int color) {
+        mBitmapPaint.setColor(color);
+    }
+
+    /**
+     * 背景の画像から画面への拡大率. 変わった場合は全ての文字列を描き直す.
+     */
+    public void setScale(float scale) {
+        setTransform(scale, 0f, 0f);
+    }
+
+    /**
+     * 背景の画像から画面への拡大率と、画面での背景の左上の位置. 針と同じく、四角くない画面では
+     * 背景がはみ出す分だけずらして置く. 変わった場合は全ての文字列を描き直す.
+     */
+    public void setTransform(float scale, float offsetLeft, float offsetTop) {
+        if (scale != mScale || offsetLeft != mOffsetLeft || offsetTop != mOffsetTop) {
+            mScale = scale;
+            mOffsetLeft = offsetLeft;
+            mOffsetTop = offsetTop;
+            for (Label label : mLabels) {
+                label.mDirty = true;
+            }
+        }
+    }
+
+    /**
+     * 次の{@link #update}で全ての文字列の内容を問い合わせ直させる. タイムゾーンが変わった時などに使う.
+     */
+    public void invalidate() {
+        for (Label label : mLabels) {
+            label.mNextUpdateMs = Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * 更新間隔が来た文字列の内容を問い合わせ、変わっていれば描き直す.
+     *
+     * @return 描き直した文字列があればtrue
+     */
+    public boolean update(long timeMs, WallClock clock) {
+        boolean changed = false;
+        for (int i = 0, size = mLabels.size(); i < size; i++) {
+            Label label = mLabels.get(i);
+            if (timeMs >= label.mNextUpdateMs || timeMs < label.mNextUpdateMs - label.mIntervalMs) {
+                // 時計が戻された場合も問い合わせ直す
+                long localMs = timeMs + clock.getOffsetMs();
+                label.mNextUpdateMs = timeMs - localMs % label.mIntervalMs + label.mIntervalMs;
+                String text = label.mSource.getText(timeMs, clock);
+                if (text == null ? label.mText != null : !text.equals(label.mText)) {
+                    label.mText = text;
+                    label.mDirty = true;
+                }
+            }
+            if (label.mDirty || (label.mBitmap != null && label.mBitmap.isRecycled())) {
+                render(label);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private void render(Label label) {
+        label.mDirty = false;
+        if (label.mText == null || label.mText.isEmpty() || mScale <= 0) {
+            if (label.mBitmap != null) {
+                label.mBitmap.recycle();
+                label.mBitmap = null;
+            }
+            return;
+        }
+        mRenderCount++;
+        mTextPaint.setTextSize(label.mTextSize * mScale);
+        mTextPaint.getFontMetrics(mFontMetrics);
+        float textWidth = mTextPaint.measureText(label.mText);
+        int width = (int) Math.ceil(textWidth);
+        int height = (int) Math.ceil(mFontMetrics.descent - mFontMetrics.ascent);
+        Bitmap bitmap = label.mBitmap;
+        if (bitmap != null && !bitmap.isRecycled() && bitmap.getWidth() >= width && bitmap.getHeight() == height) {
+            // 文字数が減っただけなら前のビットマップを使い回す
+            bitmap.eraseColor(0);
+        } else {
+            if (bitmap != null) {
+                bitmap.recycle();
+            }
+            bitmap = Bitmap.createBitmap(Math.max(1, width), Math.max(1, height), Bitmap.Config.ALPHA_8);
+            label.mBitmap = bitmap;
+        }
+        new Canvas(bitmap).drawText(label.mText, 0, -mFontMetrics.ascent, mTextPaint);
+        label.mLeft = mOffsetLeft + label.mCenterX * mScale - textWidth / 2f;
+        label.mTop = mOffsetTop + label.mBaseline * mScale + mFontMetrics.ascent;
+    }
+
+    public void draw(Canvas canvas) {
+        for (int i = 0, size = mLabels.size(); i < size; i++) {
+            Label label = mLabels.get(i);
+            if (label.mBitmap != null) {
+                canvas.drawBitmap(label.mBitmap, label.mLeft, label.mTop, mBitmapPaint);
+            }
+        }
+    }
+
+    /**
+     * 文字列をビットマップに描き直した回数.
+     */
+    public int getRenderCount() {
+        return mRenderCount;
+    }
+
+    /**
+     * 保持しているビットマップのバイト数の合計.
+     */
+    public long getByteCount() {
+        long bytes = 0;
+        for (Label label : mLabels) {
+            if (label.mBitmap != null && !label.mBitmap.isRecycled()) {
+                bytes += label.mBitmap.getByteCount();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * ビットマップを解放する. 次の{@link #update}で描き直す.
+     */
+    public void recycle() {
+        for (Label label : mLabels) {
+            if (label.mBitmap != null) {
+                label.mBitmap.recycle();
+                label.mBitmap = null;
+            }
+            label.mDirty = true;
+        }
+    }
+}
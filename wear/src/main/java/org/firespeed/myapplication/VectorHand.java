@@ -0,0 +1,100 @@
+package org.firespeed.myapplication;
+
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+
+import org.firespeed.both.SpriteRenderer;
+
+/**
+ * パスで描く針. 拡大率ごとに一度だけ画面の座標でパスを作り、毎フレームは回転するだけにする.
+ * ビットマップを持たないので拡大率によってメモリが増えず、どの解像度でもぼやけない.
+ * 形と位置は画像の針と同じ範囲に収まるようにしてある.
+ */
+public class VectorHand implements HandRenderer {
+    /**
+     * 画像の針の大きさ. 背景の画像の座標.
+     */
+    public static final float HOUR_WIDTH = 24f;
+    public static final float HOUR_HEIGHT = 215f;
+    public static final float MINUTE_WIDTH = 28f;
+    public static final float MINUTE_HEIGHT = 260f;
+
+    private final Path mPath = new Path();
+    private final Paint mPaint;
+    private final float mCenterX;
+    private final float mCenterY;
+    private boolean mReleased;
+
+    /**
+     * @param left    針の左端. 背景の画像の座標
+     * @param top     針の先端
+     * @param width   針の幅
+     * @param height  針の先端から根元までの長さ
+     * @param centerX 回転の中心
+     * @param centerY 回転の中心
+     * @param color   インタラクティブモードで塗る色
+     */
+    public VectorHand(float scale, float backgroundTop, float backgroundLeft, float left, float top,
+                      float width, float height, float centerX, float centerY, int color) {
+        mCenterX = centerX * scale + backgroundLeft;
+        mCenterY = centerY * scale + backgroundTop;
+        float middle = left + width / 2f;
+        float half = width / 2f;
+        float tail = top + height;
+        mPath.moveTo(middle, top);
+        mPath.lineTo(middle + half, top + width);
+        mPath.lineTo(middle + half * 0.6f, tail);
+        mPath.lineTo(middle - half * 0.6f, tail);
+        mPath.lineTo(middle - half, top + width);
+        mPath.close();
+        mPath.addCircle(centerX, centerY, half * 1.2f, Path.Direction.CW);
+        Matrix matrix = new Matrix();
+        matrix.setScale(scale, scale);
+        matrix.postTranslate(backgroundLeft, backgroundTop);
+        mPath.transform(matrix);
+
+        mPaint = new Paint();
+        mPaint.setColor(color);
+        mPaint.setAntiAlias(true);
+        mPaint.setStyle(Paint.Style.FILL);
+    }
+
+    public static VectorHand hour(float scale, float backgroundTop, float backgroundLeft, int color) {
+        return new VectorHand(scale, backgroundTop, backgroundLeft, SpriteRenderer.HOUR_LEFT, SpriteRenderer.HOUR_TOP,
+                HOUR_WIDTH, HOUR_HEIGHT, SpriteRenderer.PIVOT_X, SpriteRenderer.PIVOT_Y, color);
+    }
+
+    public static VectorHand minute(float scale, float backgroundTop, float backgroundLeft, int color) {
+        return new VectorHand(scale, backgroundTop, backgroundLeft, SpriteRenderer.MINUTE_LEFT, SpriteRenderer.MINUTE_TOP,
+                MINUTE_WIDTH, MINUTE_HEIGHT, SpriteRenderer.PIVOT_X, SpriteRenderer.PIVOT_Y, color);
+    }
+
+    /**
+     * 針を描く. アンビエントでは渡されたPaint(色とアンチエイリアスの有無)で塗る.
+     */
+    @Override
+    public void draw(Canvas canvas, Paint paint, Matrix matrix, float rotate, boolean isAmbient) {
+        int saveCount = canvas.save();
+        canvas.rotate(rotate, mCenterX, mCenterY);
+        canvas.drawPath(mPath, isAmbient ? paint : mPaint);
+        canvas.restoreToCount(saveCount);
+    }
+
+    @Override
+    public long getByteCount() {
+        return 0;
+    }
+
+    @Override
+    public boolean isRecycled() {
+        return mReleased;
+    }
+
+    @Override
+    public void release() {
+        mPath.reset();
+        mReleased = true;
+    }
+}
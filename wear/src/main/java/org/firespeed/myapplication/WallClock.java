@@ -0,0 +1,131 @@
+package org.firespeed.myapplication;
+
+import java.util.TimeZone;
+
+/**
+ * 毎フレームCalendarを使わずに、UTCのミリ秒から時・分・秒・ミリ秒を求める.
+ * タイムゾーンのオフセットは有効な期間ごとにキャッシュし、期間を抜けた時だけ求め直す.
+ * 有効期間はサマータイムの切り替わりの瞬間で区切るので、切り替わりをまたいでも正しい.
+ */
+public class WallClock {
+    private static final long SECOND_MS = 1000;
+    private static final long MINUTE_MS = 60 * SECOND_MS;
+    private static final long HOUR_MS = 60 * MINUTE_MS;
+    private static final long DAY_MS = 24 * HOUR_MS;
+    /**
+     * オフセットを一度に有効とみなす最大の期間. この中で切り替わりは高々一回とする.
+     */
+    private static final long OFFSET_WINDOW_MS = HOUR_MS;
+
+    private TimeZone mTimeZone;
+    private int mOffsetMs;
+    private long mValidFrom = Long.MAX_VALUE;
+    private long mValidUntil = Long.MIN_VALUE;
+    private int mOffsetLookupCount;
+
+    private int mHourOfDay;
+    private int mMinute;
+    private int mSecond;
+    private int mMillisecond;
+
+    public WallClock(TimeZone timeZone) {
+        setTimeZone(timeZone);
+    }
+
+    /**
+     * タイムゾーンを変える. キャッシュしているオフセットは捨てる.
+     */
+    public void setTimeZone(TimeZone timeZone) {
+        mTimeZone = timeZone;
+        mValidFrom = Long.MAX_VALUE;
+        mValidUntil = Long.MIN_VALUE;
+    }
+
+    public TimeZone getTimeZone() {
+        return mTimeZone;
+    }
+
+    public void setTimeInMillis(long utcMs) {
+        if (utcMs < mValidFrom || utcMs >= mValidUntil) {
+            refreshOffset(utcMs);
+        }
+        long millisOfDay = (utcMs + mOffsetMs) % DAY_MS;
+        if (millisOfDay < 0) {
+            millisOfDay += DAY_MS;
+        }
+        int millis = (int) millisOfDay;
+        mHourOfDay = millis / (int) HOUR_MS;
+        millis -= mHourOfDay * (int) HOUR_MS;
+        mMinute = millis / (int) MINUTE_MS;
+        millis -= mMinute * (int) MINUTE_MS;
+        mSecond = millis / (int) SECOND_MS;
+        mMillisecond = millis - mSecond * (int) SECOND_MS;
+    }
+
+    private void refreshOffset(long utcMs) {
+        mOffsetMs = offsetAt(utcMs);
+        mValidFrom = utcMs;
+        long end = utcMs + OFFSET_WINDOW_MS;
+        if (offsetAt(end) == mOffsetMs) {
+            mValidUntil = end;
+            return;
+        }
+        // 期間内で切り替わるので、切り替わりの瞬間を二分探索で求める
+        long low = utcMs;
+        long high = end;
+        while (high - low > 1) {
+            long mid = (low + high) >>> 1;
+            if (offsetAt(mid) == mOffsetMs) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        mValidUntil = high;
+    }
+
+    private int offsetAt(long utcMs) {
+        mOffsetLookupCount++;
+        return mTimeZone.getOffset(utcMs);
+    }
+
+    /**
+     * 0〜23時.
+     */
+    public int getHourOfDay() {
+        return mHourOfDay;
+    }
+
+    /**
+     * 0〜11時. Calendar.HOURと同じ.
+     */
+    public int getHour() {
+        return mHourOfDay % 12;
+    }
+
+    public int getMinute() {
+        return mMinute;
+    }
+
+    public int getSecond() {
+        return mSecond;
+    }
+
+    public int getMillisecond() {
+        return mMillisecond;
+    }
+
+    /**
+     * 現在のUTCからのオフセット(ミリ秒).
+     */
+    public int getOffsetMs() {
+        return mOffsetMs;
+    }
+
+    /**
+     * TimeZoneにオフセットを問い合わせた回数.
+     */
+    public int getOffsetLookupCount() {
+        return mOffsetLookupCount;
+    }
+}
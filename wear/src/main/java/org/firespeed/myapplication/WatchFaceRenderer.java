@@ -0,0 +1,502 @@
+package org.firespeed.myapplication;
+
+import android.content.res.Resources;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+
+import org.firespeed.both.Config;
+import org.firespeed.both.DisplaySpec;
+
+import java.io.PrintWriter;
+import java.util.TimeZone;
+
+/**
+ * 文字盤の描画. Engineのライフサイクルから切り離してあるので、
+ * 任意のCanvasと時刻を渡して描ける(ベンチマークからも同じ経路で描く).
+ */
+public class WatchFaceRenderer {
+    public static final float DESIGNED_SIZE = DisplaySpec.DESIGNED_SIZE;
+    /**
+     * 文字盤のレイヤーを描き直す間隔(秒). 分針はこの間に1度進む.
+     */
+    public static final int DIAL_STEP_SECONDS = 10;
+    private static final int DIAL_STEPS_PER_HOUR = 60 * 60 / DIAL_STEP_SECONDS;
+
+    private final Paint mBitmapPaint;
+    private final Paint mDrawPaint;
+    private final Paint mFallbackPaint;
+    private final Paint mSecondPaint;
+    /**
+     * アンビエント専用. 二値化した針をこの色で描く.
+     */
+    private final Paint mAmbientPaint;
+    private final Paint mOverlayPaint;
+    private final Matrix mMatrix = new Matrix();
+    /**
+     * 丸い画面で見えている円. 描画をこの内側に限って、見えない四隅を塗らないようにする.
+     */
+    private final Path mVisiblePath = new Path();
+    private final WallClock mClock;
+    /**
+     * 背景と時針・分針のキャッシュ. フレーム時間の比較用に{@link DialLayer#setEnabled}で無効にできる.
+     */
+    private final DialLayer mDialLayer = new DialLayer();
+    /**
+     * 日付などの文字. 内容が変わった時だけビットマップに描き直す.
+     */
+    private final TextLayer mTextLayer;
+    private final FrameStats mFrameStats;
+    /**
+     * 秒針の動き方. {@link #setMotion}で差し替える.
+     */
+    private MotionCurve mMotionCurve = MotionCurve.get(Config.MOTION_QUADRATIC_EASE);
+    /**
+     * 最後に描いた秒針の向き. 同じ絵になるフレームを飛ばすのに使う.
+     */
+    private int mLastSecondIndex = -1;
+
+    /**
+     * 描画に使っている背景と針. 新しい組が出来上がるまでは古い組を使い続ける.
+     */
+    private AssetSet mAssets;
+    private AssetLoader mAssetLoader;
+    private boolean mLastFrameComplete;
+
+    private boolean mAmbient;
+    private boolean mLowBitAmbient;
+    private boolean mShowFrameStats;
+    private boolean mShowSecondHand = true;
+    private boolean mRound;
+    private int mHandStyle = Config.HAND_STYLE_BITMAP;
+    private int mWidth;
+    private int mHeight;
+    private float mCenterX;
+    private float mCenterY;
+    private float mSecLength;
+    private float mHoleRadius;
+    private float mBackgroundTop;
+    private float mBackgroundLeft;
+    private float mScale;
+
+    public WatchFaceRenderer(Resources resources, long frameDeadlineMs) {
+        mBitmapPaint = new Paint();
+        mBitmapPaint.setColor(resources.getColor(R.color.background));
+        mBitmapPaint.setFilterBitmap(true);
+        mDrawPaint = new Paint();
+        mDrawPaint.setColor(resources.getColor(R.color.analog_hands));
+        mDrawPaint.setStrokeWidth(resources.getDimension(R.dimen.analog_hand_stroke));
+        mDrawPaint.setAntiAlias(true);
+        mDrawPaint.setStrokeCap(Paint.Cap.ROUND);
+        mFallbackPaint = new Paint(mDrawPaint);
+        mSecondPaint = new Paint(mDrawPaint);
+        mAmbientPaint = new Paint();
+        mAmbientPaint.setColor(Color.WHITE);
+        mAmbientPaint.setFilterBitmap(false);
+        mOverlayPaint = new Paint();
+        mOverlayPaint.setColor(Color.YELLOW);
+        mOverlayPaint.setAntiAlias(true);
+        mClock = new WallClock(TimeZone.getDefault());
+        mFrameStats = new FrameStats(frameDeadlineMs);
+        mTextLayer = new TextLayer(mDrawPaint.getColor());
+        mTextLayer.addLabel(new DateSource(), TextLayer.HOUR_MS, DESIGNED_SIZE / 2f, 400f, 48f);
+    }
+
+    /**
+     * 背景と針を組み立てるローダーを設定する. 設定しない場合は{@link #setAssets}で直接渡す.
+     */
+    public void setAssetLoader(AssetLoader assetLoader) {
+        mAssetLoader = assetLoader;
+        if (assetLoader != null) {
+            assetLoader.setHandStyle(mHandStyle);
+        }
+    }
+
+    /**
+     * 背景と針の組を差し替える. 古い組は解放する.
+     */
+    public void setAssets(AssetSet assets) {
+        if (mAssets != null && mAssets != assets) {
+            mAssets.release();
+        }
+        mAssets = assets;
+        mDialLayer.invalidate();
+        if (assets != null) {
+            mFrameStats.countAssetRebuild();
+        }
+    }
+
+    /**
+     * 今の画面の大きさで背景と針を組み立て直す. 出来上がるまでは今の組で描く.
+     */
+    public void reloadAssets() {
+        if (mAssetLoader != null && mWidth > 0 && mHeight > 0) {
+            mAssetLoader.reload(mWidth, mHeight, mRound, mScale, mBackgroundLeft, mBackgroundTop);
+        }
+    }
+
+    /**
+     * 描画先の大きさが分かった時点で呼び、最初のフレームより前に背景と針の組み立てを始めさせる.
+     */
+    public void prepare(int width, int height) {
+        if (setSize(width, height) && mAssetLoader != null) {
+            mAssetLoader.request(mWidth, mHeight, mRound, mScale, mBackgroundLeft, mBackgroundTop);
+        }
+    }
+
+    /**
+     * 丸い画面かどうかを設定する. 丸い画面では背景の四隅を落とし、描画を見えている円の内側に限る.
+     */
+    public void setRound(boolean round) {
+        if (round == mRound) {
+            return;
+        }
+        mRound = round;
+        updateVisiblePath();
+        mDialLayer.invalidate();
+        if (mAssetLoader != null && mWidth > 0 && mHeight > 0) {
+            mAssetLoader.request(mWidth, mHeight, mRound, mScale, mBackgroundLeft, mBackgroundTop);
+        }
+    }
+
+    public boolean isRound() {
+        return mRound;
+    }
+
+    /**
+     * 時針と分針の描き方を設定する. 新しい描き方の組が出来上がるまでは今の組で描く.
+     *
+     * @param handStyle Config.HAND_STYLE_で始まる値のどれか
+     */
+    public void setHandStyle(int handStyle) {
+        if (handStyle == mHandStyle) {
+            return;
+        }
+        mHandStyle = handStyle;
+        if (mAssetLoader != null) {
+            mAssetLoader.setHandStyle(handStyle);
+            if (mWidth > 0 && mHeight > 0) {
+                mAssetLoader.request(mWidth, mHeight, mRound, mScale, mBackgroundLeft, mBackgroundTop);
+            }
+        }
+    }
+
+    public void setTimeZone(TimeZone timeZone) {
+        mClock.setTimeZone(timeZone);
+        mTextLayer.invalidate();
+    }
+
+    public void setLowBitAmbient(boolean lowBitAmbient) {
+        mLowBitAmbient = lowBitAmbient;
+        mAmbientPaint.setAntiAlias(!lowBitAmbient);
+    }
+
+    public void setAmbient(boolean ambient) {
+        mAmbient = ambient;
+        if (ambient) {
+            // アンビエントではレイヤーを使わないので、その間はメモリを返しておく
+            mDialLayer.recycle();
+            mTextLayer.recycle();
+        }
+        if (mLowBitAmbient) {
+            mDrawPaint.setAntiAlias(!ambient);
+            mBitmapPaint.setFilterBitmap(!ambient);
+        }
+    }
+
+    /**
+     * 秒針を描くかどうか. 描かない場合は分が変わった時だけ描けばよい.
+     */
+    public void setShowSecondHand(boolean showSecondHand) {
+        mShowSecondHand = showSecondHand;
+    }
+
+    public void setSecondHandColor(int color) {
+        mSecondPaint.setColor(color);
+    }
+
+    public void setMotion(int motion) {
+        mMotionCurve = MotionCurve.get(motion);
+    }
+
+    public MotionCurve getMotionCurve() {
+        return mMotionCurve;
+    }
+
+    public void toggleFrameStats() {
+        mShowFrameStats = !mShowFrameStats;
+    }
+
+    /**
+     * 直前のフレームを背景と針の画像で描けたかどうか. falseなら組み立て中の代わりの描画だった.
+     */
+    public boolean isLastFrameComplete() {
+        return mLastFrameComplete;
+    }
+
+    public FrameStats getFrameStats() {
+        return mFrameStats;
+    }
+
+    public DialLayer getDialLayer() {
+        return mDialLayer;
+    }
+
+    /**
+     * 文字のレイヤー. 日付の他に表示したいものがあればここに加える.
+     */
+    public TextLayer getTextLayer() {
+        return mTextLayer;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public float getScale() {
+        return mScale;
+    }
+
+    public float getBackgroundLeft() {
+        return mBackgroundLeft;
+    }
+
+    public float getBackgroundTop() {
+        return mBackgroundTop;
+    }
+
+    /**
+     * 描画先の大きさを設定する. 大きさが変わった場合はtrueを返す.
+     */
+    public boolean setSize(int width, int height) {
+        if (width == mWidth && height == mHeight) {
+            return false;
+        }
+        mWidth = width;
+        mHeight = height;
+        mCenterX = mWidth / 2;
+        mCenterY = mHeight / 2;
+        int longSize = Math.max(width, height);
+        mScale = longSize / DESIGNED_SIZE;
+        mOverlayPaint.setTextSize(20f * mScale);
+        mBackgroundLeft = (mWidth - longSize) / 2f;
+        mBackgroundTop = (mHeight - longSize) / 2f;
+        mTextLayer.setTransform(mScale, mBackgroundLeft, mBackgroundTop);
+
+        mSecLength = (int) (200f * mScale);
+
+        // 中央穴の半径
+        mHoleRadius = mScale * 12f;
+        mFallbackPaint.setStrokeWidth(mScale * 16f);
+        updateVisiblePath();
+        return true;
+    }
+
+    private void updateVisiblePath() {
+        mVisiblePath.reset();
+        if (mRound) {
+            mVisiblePath.addCircle(mCenterX, mCenterY, Math.max(mWidth, mHeight) / 2f, Path.Direction.CW);
+        }
+    }
+
+    /**
+     * 丸い画面では描画を見えている円の内側に限る. 四角い画面ではCanvas全体が見えているので何もしない.
+     */
+    private void clipToVisible(Canvas canvas) {
+        if (mRound) {
+            canvas.clipPath(mVisiblePath);
+        }
+    }
+
+    /**
+     * 指定時刻に描く秒針の向きが、前回描いたものから変わるかどうか.
+     */
+    public boolean isFrameChanged(long timeMs) {
+        mClock.setTimeInMillis(timeMs);
+        return mMotionCurve.angleIndex(mClock.getSecond(), mClock.getMillisecond()) != mLastSecondIndex;
+    }
+
+    public void draw(Canvas canvas, long timeMs) {
+        mFrameStats.begin();
+        mClock.setTimeInMillis(timeMs);
+        if (setSize(canvas.getWidth(), canvas.getHeight()) && mAssetLoader != null) {
+            mAssetLoader.request(mWidth, mHeight, mRound, mScale, mBackgroundLeft, mBackgroundTop);
+        }
+
+        // 出来上がった組があれば差し替える
+        if (mAssetLoader != null) {
+            AssetSet ready = mAssetLoader.poll();
+            if (ready != null) {
+                setAssets(ready);
+            }
+        }
+        if (mAssets == null && mAssetLoader != null && mWidth > 0 && mHeight > 0) {
+            // 解放された後は、必要になった時にワーカースレッドで組み立て直す
+            mAssetLoader.request(mWidth, mHeight, mRound, mScale, mBackgroundLeft, mBackgroundTop);
+        }
+        boolean hasAssets = mAssets != null && mAssets.isForDisplay(mWidth, mHeight, mRound) && !mAssets.isRecycled();
+        if (!hasAssets && mAssets != null && mAssets.isRecycled()) {
+            if (mAssetLoader != null) {
+                mAssetLoader.reload(mWidth, mHeight, mRound, mScale, mBackgroundLeft, mBackgroundTop);
+            }
+            mAssets.release();
+            mAssets = null;
+            mDialLayer.invalidate();
+        }
+
+        mLastFrameComplete = hasAssets;
+
+        mFrameStats.lap(FrameStats.PHASE_ASSETS);
+        int saveCount = canvas.save();
+        clipToVisible(canvas);
+        if (mAmbient) {
+            drawAmbient(canvas, hasAssets);
+            canvas.restoreToCount(saveCount);
+            mFrameStats.lap(FrameStats.PHASE_HANDS);
+            mFrameStats.end();
+            return;
+        }
+
+        // これが変わった時だけ文字盤を描き直す
+        int dialStep = getDialStep();
+        if (!hasAssets) {
+            // 組み立て中は針を線で描いて凌ぐ
+            drawFallbackDial(canvas, dialStep);
+            mFrameStats.lap(FrameStats.PHASE_HANDS);
+        } else if (mDialLayer.isEnabled()) {
+            Canvas layer = mDialLayer.beginUpdate(mWidth, mHeight, dialStep, mAmbient);
+            if (layer != null) {
+                int layerSaveCount = layer.save();
+                clipToVisible(layer);
+                drawDial(layer, dialStep);
+                layer.restoreToCount(layerSaveCount);
+            }
+            mDialLayer.draw(canvas, null);
+            mFrameStats.lap(FrameStats.PHASE_BACKGROUND);
+        } else {
+            drawDial(canvas, dialStep);
+        }
+
+        if (mShowSecondHand) {
+            int secIndex = mMotionCurve.angleIndex(mClock.getSecond(), mClock.getMillisecond());
+            mLastSecondIndex = secIndex;
+            float secX = MotionCurve.sin(secIndex) * mSecLength;
+            float secY = -MotionCurve.cos(secIndex) * mSecLength;
+            canvas.drawLine(mCenterX, mCenterY, mCenterX + secX, mCenterY + secY, mSecondPaint);
+        }
+        canvas.drawCircle(mCenterX, mCenterY, mHoleRadius, mSecondPaint);
+        mFrameStats.lap(FrameStats.PHASE_SECOND);
+        mTextLayer.update(timeMs, mClock);
+        mTextLayer.draw(canvas);
+        canvas.restoreToCount(saveCount);
+        mFrameStats.lap(FrameStats.PHASE_TEXT);
+        mFrameStats.end();
+        if (mShowFrameStats) {
+            mFrameStats.drawOverlay(canvas, mOverlayPaint, mCenterX - mSecLength / 2f, mHeight / 4f);
+        }
+    }
+
+    /**
+     * インタラクティブモードの背景と時針・分針を描く.
+     *
+     * @param dialStep {@link #getDialStep}の値
+     */
+    private void drawDial(Canvas canvas, int dialStep) {
+        // Draw the background.
+        canvas.drawBitmap(mAssets.background, 0, 0, mBitmapPaint);
+        mFrameStats.lap(FrameStats.PHASE_BACKGROUND);
+        float hourRotate = (mClock.getHour() + mClock.getMinute() / 60f) * 30;
+        mAssets.hour.draw(canvas, mBitmapPaint, mMatrix, hourRotate, false);
+        mAssets.minute.draw(canvas, mBitmapPaint, mMatrix, getMinuteRotate(dialStep), false);
+        mFrameStats.lap(FrameStats.PHASE_HANDS);
+    }
+
+    /**
+     * 12時から数えて、{@link #DIAL_STEP_SECONDS}秒ごとに一つ進む値. 時針と分針の絵はこれで決まる.
+     */
+    private int getDialStep() {
+        return ((mClock.getHour() * 60 + mClock.getMinute()) * 60 + mClock.getSecond()) / DIAL_STEP_SECONDS;
+    }
+
+    /**
+     * 分針の角度(度).
+     */
+    private static float getMinuteRotate(int dialStep) {
+        return dialStep % DIAL_STEPS_PER_HOUR * 360f / DIAL_STEPS_PER_HOUR;
+    }
+
+    /**
+     * アンビエントの描画. 一分に一度しか呼ばれないので、レイヤーを使わず背景・秒針・文字も描かない.
+     */
+    private void drawAmbient(Canvas canvas, boolean hasAssets) {
+        int dialStep = getDialStep();
+        if (!hasAssets) {
+            drawFallbackDial(canvas, dialStep);
+            return;
+        }
+        canvas.drawColor(Color.BLACK);
+        float hourRotate = (mClock.getHour() + mClock.getMinute() / 60f) * 30;
+        mAssets.hour.draw(canvas, mAmbientPaint, mMatrix, hourRotate, true);
+        mAssets.minute.draw(canvas, mAmbientPaint, mMatrix, getMinuteRotate(dialStep), true);
+        canvas.drawCircle(mCenterX, mCenterY, mHoleRadius, mAmbientPaint);
+    }
+
+    /**
+     * 背景と針のビットマップが用意できるまでの代わりの描画.
+     */
+    private void drawFallbackDial(Canvas canvas, int dialStep) {
+        canvas.drawColor(mAmbient ? Color.BLACK : mBitmapPaint.getColor());
+        float hourRot = (mClock.getHour() + mClock.getMinute() / 60f) / 6f * (float) Math.PI;
+        float hourLength = 176f * mScale;
+        canvas.drawLine(mCenterX, mCenterY, mCenterX + (float) Math.sin(hourRot) * hourLength,
+                mCenterY - (float) Math.cos(hourRot) * hourLength, mFallbackPaint);
+        float minuteRot = (float) Math.toRadians(getMinuteRotate(dialStep));
+        float minuteLength = 202f * mScale;
+        canvas.drawLine(mCenterX, mCenterY, mCenterX + (float) Math.sin(minuteRot) * minuteLength,
+                mCenterY - (float) Math.cos(minuteRot) * minuteLength, mFallbackPaint);
+    }
+
+    public void dump(PrintWriter out, String prefix) {
+        out.print(prefix);
+        out.println("FrameStats:");
+        mFrameStats.dump(out, prefix + "  ");
+        out.print(prefix);
+        out.println("  dialLayerRebuilds=" + mDialLayer.getRebuildCount()
+                + " textRenders=" + mTextLayer.getRenderCount() + " textBytes=" + mTextLayer.getByteCount());
+    }
+
+    /**
+     * 背景と針を解放する. 次に描く時にローダーで組み立て直し、出来上がるまでは代わりの描画で凌ぐ.
+     */
+    public void releaseAssets() {
+        if (mAssetLoader != null) {
+            mAssetLoader.cancel();
+        }
+        if (mAssets != null) {
+            mAssets.release();
+            mAssets = null;
+        }
+        mDialLayer.invalidate();
+    }
+
+    /**
+     * 背景と針のバイト数.
+     */
+    public long getAssetBytes() {
+        return mAssets == null ? 0 : mAssets.getByteCount();
+    }
+
+    /**
+     * 保持しているビットマップを全て解放する.
+     */
+    public void release() {
+        mDialLayer.recycle();
+        mTextLayer.recycle();
+        if (mAssets != null) {
+            mAssets.release();
+            mAssets = null;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.firespeed.myapplication;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+
+import org.firespeed.both.Config;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class DialLayerTest {
+    private static final int SIZE = 320;
+    private static final long FRAME_MS = 33;
+    private static final long MINUTE_MS = 60 * 1000;
+    /**
+     * 2015/12/06 00:00 UTC.
+     */
+    private static final long START_MS = 1449360000000L;
+
+    private WatchFaceRenderer mRenderer;
+    private Bitmap mTarget;
+    private Canvas mCanvas;
+
+    @Before
+    public void setUp() {
+        Resources resources = RuntimeEnvironment.application.getResources();
+        mRenderer = new WatchFaceRenderer(resources, FRAME_MS);
+        mRenderer.setTimeZone(TimeZone.getTimeZone("UTC"));
+        mRenderer.setSize(SIZE, SIZE);
+        mRenderer.setAssets(AssetSet.create(resources, SIZE, SIZE, mRenderer.getScale(),
+                mRenderer.getBackgroundLeft(), mRenderer.getBackgroundTop(), 0));
+        mTarget = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mTarget);
+    }
+
+    @After
+    public void tearDown() {
+        mRenderer.release();
+        mTarget.recycle();
+    }
+
+    private int rebuildsOverOneMinute(long frameMs) {
+        int before = mRenderer.getDialLayer().getRebuildCount();
+        for (long t = 0; t < MINUTE_MS; t += frameMs) {
+            mRenderer.draw(mCanvas, START_MS + t);
+        }
+        return mRenderer.getDialLayer().getRebuildCount() - before;
+    }
+
+    @Test
+    public void smoothMotionRebuildsOnlyWhenMinuteHandMoves() {
+        mRenderer.setMotion(Config.MOTION_SMOOTH);
+        assertEquals(60 / WatchFaceRenderer.DIAL_STEP_SECONDS, rebuildsOverOneMinute(FRAME_MS));
+    }
+
+    @Test
+    public void tickMotionDoesNotRebuildEverySecond() {
+        mRenderer.setMotion(Config.MOTION_TICK);
+        assertEquals(60 / WatchFaceRenderer.DIAL_STEP_SECONDS, rebuildsOverOneMinute(1000));
+    }
+
+    @Test
+    public void sameMinuteOneHourLaterIsRebuilt() {
+        mRenderer.draw(mCanvas, START_MS);
+        int before = mRenderer.getDialLayer().getRebuildCount();
+        mRenderer.draw(mCanvas, START_MS + 60 * MINUTE_MS);
+        assertEquals(before + 1, mRenderer.getDialLayer().getRebuildCount());
+    }
+}
@@ -0,0 +1,79 @@
+package org.firespeed.myapplication;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+
+import org.firespeed.both.SpriteRenderer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.GraphicsMode;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class HandSpriteCacheTest {
+    private static final int SIZE = 320;
+    private static final int STEPS = 360;
+
+    private HandSpriteCache mCache;
+    private Hand mHand;
+    private Bitmap mTarget;
+    private Canvas mCanvas;
+    private final Paint mPaint = new Paint();
+    private final Matrix mMatrix = new Matrix();
+
+    @Before
+    public void setUp() {
+        Resources resources = RuntimeEnvironment.application.getResources();
+        float scale = SIZE / WatchFaceRenderer.DESIGNED_SIZE;
+        mCache = new HandSpriteCache(HandSpriteCache.DEFAULT_MAX_BYTES);
+        mHand = new Hand(resources, R.drawable.minute, R.drawable.minute, scale, 0, 0,
+                SpriteRenderer.MINUTE_LEFT, SpriteRenderer.MINUTE_TOP, SpriteRenderer.PIVOT_X, SpriteRenderer.PIVOT_Y);
+        mHand.setSpriteMode(STEPS, mCache);
+        mTarget = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mTarget);
+    }
+
+    @After
+    public void tearDown() {
+        mCache.evictAll();
+        mHand.release();
+        mTarget.recycle();
+    }
+
+    @Test
+    public void sameStepIsDrawnFromCache() {
+        mHand.draw(mCanvas, mPaint, mMatrix, 90f, false);
+        mHand.draw(mCanvas, mPaint, mMatrix, 90.2f, false);
+        assertEquals(1, mCache.missCount());
+        assertEquals(1, mCache.hitCount());
+        assertEquals(1, mCache.putCount());
+    }
+
+    @Test
+    public void lookupKeyDoesNotChangeStoredEntries() {
+        mHand.draw(mCanvas, mPaint, mMatrix, 10f, false);
+        mHand.draw(mCanvas, mPaint, mMatrix, 20f, false);
+        assertEquals(2, mCache.putCount());
+        // 引くためのキーを使い回しても、入れたものは元の角度で引ける
+        float scale = SIZE / WatchFaceRenderer.DESIGNED_SIZE;
+        assertNotNull(mCache.get(new HandSpriteCache.Key(R.drawable.minute, scale, 10, false)));
+        assertNotNull(mCache.get(new HandSpriteCache.Key(R.drawable.minute, scale, 20, false)));
+    }
+
+    @Test
+    public void resizeEvictsDownToNewLimit() {
+        mHand.draw(mCanvas, mPaint, mMatrix, 10f, false);
+        mHand.draw(mCanvas, mPaint, mMatrix, 20f, false);
+        mCache.resize(mCache.size() / 2 + 1);
+        assertEquals(1, mCache.evictionCount());
+    }
+}
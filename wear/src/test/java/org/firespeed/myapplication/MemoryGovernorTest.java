@@ -0,0 +1,137 @@
+package org.firespeed.myapplication;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class MemoryGovernorTest {
+    private static final int SIZE = 320;
+    /**
+     * 2015/12/06 00:00 UTC.
+     */
+    private static final long START_MS = 1449360000000L;
+
+    private WatchFaceRenderer mRenderer;
+    private MemoryGovernor mGovernor;
+    private Bitmap mTarget;
+    private Canvas mCanvas;
+
+    @Before
+    public void setUp() {
+        Resources resources = RuntimeEnvironment.application.getResources();
+        mRenderer = new WatchFaceRenderer(resources, 33);
+        mRenderer.setTimeZone(TimeZone.getTimeZone("UTC"));
+        mRenderer.setSize(SIZE, SIZE);
+        mRenderer.setAssets(AssetSet.create(resources, SIZE, SIZE, mRenderer.getScale(),
+                mRenderer.getBackgroundLeft(), mRenderer.getBackgroundTop(), 60));
+        mTarget = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mTarget);
+        mGovernor = new MemoryGovernor(mRenderer);
+        mGovernor.onVisibilityChanged(true);
+        mRenderer.draw(mCanvas, START_MS);
+    }
+
+    @After
+    public void tearDown() {
+        mGovernor.stop();
+        mRenderer.release();
+        HandSpriteCache.getInstance().evictAll();
+        mTarget.recycle();
+    }
+
+    private void idleFor(long ms) {
+        shadowOf(Looper.getMainLooper()).idleFor(ms, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void accountsEverythingDrawn() {
+        long held = mGovernor.getBytesHeld();
+        assertTrue(mRenderer.getAssetBytes() > 0);
+        assertTrue(mRenderer.getDialLayer().getByteCount() >= SIZE * SIZE * 4);
+        assertTrue(mRenderer.getTextLayer().getByteCount() > 0);
+        // 共有の針のスプライトは文字盤ごとには数えない
+        assertTrue(HandSpriteCache.getInstance().size() > 0);
+        assertEquals(mRenderer.getAssetBytes() + mRenderer.getDialLayer().getByteCount()
+                + mRenderer.getTextLayer().getByteCount(), held);
+    }
+
+    @Test
+    public void invisibleReleasesLayersThenAssets() {
+        mGovernor.onVisibilityChanged(false);
+        assertEquals(0, mRenderer.getDialLayer().getByteCount());
+        assertEquals(0, mRenderer.getTextLayer().getByteCount());
+        assertTrue(mRenderer.getAssetBytes() > 0);
+
+        idleFor(MemoryGovernor.INVISIBLE_GRACE_MS);
+        assertEquals(0, mRenderer.getAssetBytes());
+        assertEquals(0, mGovernor.getBytesHeld());
+        // 他の文字盤が描いているかもしれないので、共有の針のスプライトは残す
+        assertTrue(HandSpriteCache.getInstance().size() > 0);
+    }
+
+    @Test
+    public void visibleAgainKeepsAssets() {
+        mGovernor.onVisibilityChanged(false);
+        idleFor(MemoryGovernor.INVISIBLE_GRACE_MS / 2);
+        mGovernor.onVisibilityChanged(true);
+        idleFor(MemoryGovernor.INVISIBLE_GRACE_MS);
+        assertTrue(mRenderer.getAssetBytes() > 0);
+        // レイヤーは次のフレームで作り直す
+        mRenderer.draw(mCanvas, START_MS + 1000);
+        assertTrue(mRenderer.getDialLayer().getByteCount() > 0);
+    }
+
+    @Test
+    public void trimLevelsReleaseInPriorityOrder() {
+        mGovernor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE);
+        assertTrue(HandSpriteCache.getInstance().size() > 0);
+        assertTrue(mRenderer.getDialLayer().getByteCount() > 0);
+
+        // 見えている間は背景と針までは解放しない
+        mGovernor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL);
+        assertEquals(0, mRenderer.getDialLayer().getByteCount());
+        assertTrue(mRenderer.getAssetBytes() > 0);
+
+        mGovernor.onVisibilityChanged(false);
+        mGovernor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+        assertEquals(0, mRenderer.getAssetBytes());
+    }
+
+    @Test
+    public void budgetReleasesCheapestFirst() {
+        mGovernor.setBudgetBytes(mGovernor.getBytesHeld());
+        assertEquals(MemoryGovernor.LEVEL_NONE, mGovernor.enforceBudget());
+        mGovernor.setBudgetBytes(mRenderer.getAssetBytes());
+        assertEquals(MemoryGovernor.LEVEL_LAYERS, mGovernor.enforceBudget());
+        assertTrue(mRenderer.getAssetBytes() > 0);
+    }
+
+    @Test
+    public void sharedCachesAreTrimmedOncePerProcess() {
+        mRenderer.releaseAssets();
+        assertTrue(HandSpriteCache.getInstance().size() > 0);
+        SharedCacheTrimmer trimmer = new SharedCacheTrimmer();
+        trimmer.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE);
+        assertEquals(0, HandSpriteCache.getInstance().size());
+        assertEquals(0, ScaledBitmapPool.getInstance().getBytesReusable());
+        assertEquals(1, trimmer.getTrimCount());
+    }
+}
@@ -0,0 +1,85 @@
+package org.firespeed.myapplication;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PowerGovernorTest {
+    private static final long START_MS = 1449360000000L;
+
+    @Test
+    public void stagesDropWithBatteryAndTemperature() {
+        PowerGovernor governor = new PowerGovernor();
+        assertFalse(governor.onBatteryChanged(80, false, 30f));
+        assertEquals(PowerGovernor.STAGE_SMOOTH, governor.getStage());
+        assertTrue(governor.onBatteryChanged(30, false, 30f));
+        assertEquals(PowerGovernor.STAGE_TICK, governor.getStage());
+        assertTrue(governor.onBatteryChanged(15, false, 30f));
+        assertEquals(PowerGovernor.STAGE_MINUTE, governor.getStage());
+        // 充電を始めたらすぐに戻す
+        assertTrue(governor.onBatteryChanged(15, true, 30f));
+        assertEquals(PowerGovernor.STAGE_SMOOTH, governor.getStage());
+        // 電池が十分でも熱ければ落とす
+        assertTrue(governor.onBatteryChanged(90, false, 46f));
+        assertEquals(PowerGovernor.STAGE_MINUTE, governor.getStage());
+    }
+
+    @Test
+    public void stagesRecoverWithHysteresis() {
+        assertEquals(PowerGovernor.STAGE_TICK, PowerGovernor.evaluate(31, 30f, PowerGovernor.STAGE_TICK));
+        assertEquals(PowerGovernor.STAGE_TICK, PowerGovernor.evaluate(35, 30f, PowerGovernor.STAGE_TICK));
+        assertEquals(PowerGovernor.STAGE_SMOOTH, PowerGovernor.evaluate(36, 30f, PowerGovernor.STAGE_TICK));
+        assertEquals(PowerGovernor.STAGE_MINUTE, PowerGovernor.evaluate(18, 30f, PowerGovernor.STAGE_MINUTE));
+        assertEquals(PowerGovernor.STAGE_TICK, PowerGovernor.evaluate(25, 30f, PowerGovernor.STAGE_MINUTE));
+        assertEquals(PowerGovernor.STAGE_TICK, PowerGovernor.evaluate(50, 39f, PowerGovernor.STAGE_TICK));
+        assertEquals(PowerGovernor.STAGE_SMOOTH, PowerGovernor.evaluate(50, 37f, PowerGovernor.STAGE_TICK));
+    }
+
+    @Test
+    public void wakeLockStaysWithinBudget() {
+        PowerGovernor governor = new PowerGovernor();
+        governor.setWakeLockBudgetMs(30000);
+        assertEquals(20000, governor.requestWakeLock(START_MS, 20000));
+        // 持っている間に頼み直しても、重なる分は数えない
+        assertEquals(20000, governor.requestWakeLock(START_MS + 5000, 20000));
+        assertEquals(25000, governor.getWindowWakeLockMs());
+        assertEquals(5000, governor.requestWakeLock(START_MS + 60000, 20000));
+        assertEquals(0, governor.requestWakeLock(START_MS + 120000, 20000));
+        // 一時間たてば予算が戻る
+        assertEquals(20000, governor.requestWakeLock(START_MS + PowerGovernor.HOUR_MS, 20000));
+    }
+
+    @Test
+    public void releasedEarlyIsRefunded() {
+        PowerGovernor governor = new PowerGovernor();
+        governor.requestWakeLock(START_MS, 20000);
+        governor.onWakeLockReleased(START_MS + 2000);
+        assertEquals(2000, governor.getWindowWakeLockMs());
+    }
+
+    @Test
+    public void lowerStagesHoldLessWakeLock() {
+        PowerGovernor governor = new PowerGovernor();
+        governor.onBatteryChanged(25, false, 30f);
+        assertEquals(5000, governor.requestWakeLock(START_MS, 20000));
+        governor.onBatteryChanged(10, false, 30f);
+        assertEquals(0, governor.requestWakeLock(START_MS + 60000, 20000));
+    }
+
+    @Test
+    public void estimatesEnergyPerHour() {
+        PowerGovernor governor = new PowerGovernor();
+        assertEquals(0f, governor.getEstimatedMilliwattHours(START_MS), 0f);
+        // 30fpsで30分描いた
+        for (long t = START_MS; t < START_MS + PowerGovernor.HOUR_MS / 2; t += 33) {
+            governor.onFrameRendered(t);
+        }
+        float halfHour = governor.getEstimatedMilliwattHours(START_MS + PowerGovernor.HOUR_MS / 2);
+        float expected = (PowerGovernor.HOUR_MS / 33) * PowerGovernor.FRAME_ENERGY_MJ / 3600f;
+        assertEquals(expected, halfHour, expected * 0.01f);
+        // 一時間たつと前の一時間の実績を使う
+        governor.onFrameRendered(START_MS + PowerGovernor.HOUR_MS);
+        float hour = governor.getEstimatedMilliwattHours(START_MS + PowerGovernor.HOUR_MS);
+        assertEquals(expected / 2, hour, expected * 0.01f);
+    }
+}
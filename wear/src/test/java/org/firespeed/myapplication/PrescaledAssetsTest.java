@@ -0,0 +1,78 @@
+package org.firespeed.myapplication;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import org.firespeed.both.DisplaySpec;
+import org.firespeed.both.SpriteRenderer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * ビルド時に拡大縮小した画像が、実行時に拡大縮小した時と同じ大きさになっていることを確かめる.
+ */
+@RunWith(RobolectricTestRunner.class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class PrescaledAssetsTest {
+    private static final DisplaySpec[] SPECS = {
+            new DisplaySpec(320, 320, true),
+            new DisplaySpec(360, 326, true),
+            new DisplaySpec(454, 454, true),
+            new DisplaySpec(280, 280, false),
+    };
+
+    private static Bitmap decodeAsset(Resources resources, String path) throws Exception {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inScaled = false;
+        InputStream stream = resources.getAssets().open(path);
+        try {
+            return BitmapFactory.decodeStream(stream, null, options);
+        } finally {
+            stream.close();
+        }
+    }
+
+    @Test
+    public void matchesRuntimeScaling() throws Exception {
+        Resources resources = RuntimeEnvironment.application.getResources();
+        for (DisplaySpec spec : SPECS) {
+            String dir = PrescaledAssets.find(spec.width, spec.height, spec.round);
+            assertNotNull(spec.toString(), dir);
+            Bitmap background = decodeAsset(resources, dir + "/" + PrescaledAssets.BACKGROUND);
+            assertEquals(spec.width, background.getWidth());
+            assertEquals(spec.height, background.getHeight());
+
+            int[] ids = {R.drawable.hour, R.drawable.minute};
+            String[] names = {PrescaledAssets.HOUR, PrescaledAssets.MINUTE};
+            for (int i = 0; i < ids.length; i++) {
+                Bitmap runtime = SpriteRenderer.decodeScaled(resources, ids[i], spec.getScale());
+                Bitmap prescaled = decodeAsset(resources, dir + "/" + names[i]);
+                assertEquals(spec + " " + names[i], runtime.getWidth(), prescaled.getWidth());
+                assertEquals(spec + " " + names[i], runtime.getHeight(), prescaled.getHeight());
+                runtime.recycle();
+                prescaled.recycle();
+            }
+            background.recycle();
+        }
+    }
+
+    @Test
+    public void unknownDisplayFallsBack() {
+        assertNull(PrescaledAssets.find(300, 300, true));
+        assertNull(PrescaledAssets.find(280, 280, true));
+        Resources resources = RuntimeEnvironment.application.getResources();
+        DisplaySpec spec = new DisplaySpec(300, 300, true);
+        AssetSet assets = AssetSet.create(resources, spec.width, spec.height, spec.round, spec.getScale(),
+                spec.getBackgroundLeft(), spec.getBackgroundTop(), 0, null);
+        assertEquals(300, assets.background.getWidth());
+        assets.release();
+    }
+}
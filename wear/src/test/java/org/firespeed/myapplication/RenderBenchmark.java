@@ -0,0 +1,138 @@
+package org.firespeed.myapplication;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+
+import org.firespeed.both.Config;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/**
+ * 文字盤の描画をJVM上のオフスクリーンのCanvasで回し、フレーム時間とメモリ確保量を出す.
+ * 24時間を15分おきに区切り、それぞれの時刻から1秒分(30フレーム)を実時間と同じ間隔で描く.
+ * 結果は標準出力に出すので、ビルドごとに見比べること.
+ */
+@RunWith(RobolectricTestRunner.class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class RenderBenchmark {
+    private static final int[] SIZES = {320, 360, 390, 454};
+    private static final int[] MOTIONS = {Config.MOTION_SMOOTH, Config.MOTION_QUADRATIC_EASE};
+    private static final boolean[] SHAPES = {false, true};
+    private static final long FRAME_MS = 33;
+    private static final int FRAMES_PER_SAMPLE = 30;
+    private static final long SAMPLE_INTERVAL_MS = 15 * 60 * 1000;
+    private static final long DAY_MS = 24 * 60 * 60 * 1000;
+    private static final int WARMUP_FRAMES = 100;
+    /**
+     * 2015/12/06 00:00 UTC.
+     */
+    private static final long START_MS = 1449360000000L;
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    private static String report(String name, int size, long[] frameNanos, long allocated) {
+        long[] sorted = frameNanos.clone();
+        Arrays.sort(sorted);
+        long total = 0;
+        for (long nanos : sorted) {
+            total += nanos;
+        }
+        double fps = sorted.length / (total / 1e9);
+        return String.format("%-14s %4dpx  %8.1f fps  p50 %6.3fms  p99 %6.3fms  %8.1f bytes/frame",
+                name, size, fps, sorted[sorted.length / 2] / 1e6, sorted[sorted.length * 99 / 100] / 1e6,
+                allocated / (double) sorted.length);
+    }
+
+    @Test
+    public void clockSweep() throws Exception {
+        Resources resources = RuntimeEnvironment.application.getResources();
+        for (boolean round : SHAPES) {
+            for (int motion : MOTIONS) {
+                for (int size : SIZES) {
+                    WatchFaceRenderer renderer = new WatchFaceRenderer(resources, FRAME_MS);
+                    renderer.setTimeZone(TimeZone.getTimeZone("UTC"));
+                    renderer.setMotion(motion);
+                    renderer.setRound(round);
+                    renderer.setSize(size, size);
+                    renderer.setAssets(AssetSet.create(resources, size, size, round, renderer.getScale(),
+                            renderer.getBackgroundLeft(), renderer.getBackgroundTop(), 720, null));
+                    Bitmap target = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+                    Canvas canvas = new Canvas(target);
+
+                    for (int i = 0; i < WARMUP_FRAMES; i++) {
+                        renderer.draw(canvas, START_MS + i * FRAME_MS);
+                    }
+                    int samples = (int) (DAY_MS / SAMPLE_INTERVAL_MS);
+                    long[] frameNanos = new long[samples * FRAMES_PER_SAMPLE];
+                    long allocatedBefore = allocatedBytes();
+                    int frame = 0;
+                    for (int sample = 0; sample < samples; sample++) {
+                        long sampleStart = START_MS + sample * SAMPLE_INTERVAL_MS;
+                        for (int i = 0; i < FRAMES_PER_SAMPLE; i++) {
+                            long begin = System.nanoTime();
+                            renderer.draw(canvas, sampleStart + i * FRAME_MS);
+                            frameNanos[frame++] = System.nanoTime() - begin;
+                        }
+                    }
+                    long allocated = allocatedBytes() - allocatedBefore;
+                    String name = (motion == Config.MOTION_SMOOTH ? "face/smooth" : "face/tick") + (round ? "/round" : "");
+                    System.out.println(report(name, size, frameNanos, allocated));
+                    assertEquals(frameNanos.length, renderer.getFrameStats().getFrameCount() - WARMUP_FRAMES);
+                    renderer.release();
+                    target.recycle();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void handDraw() throws Exception {
+        Resources resources = RuntimeEnvironment.application.getResources();
+        int color = resources.getColor(R.color.analog_hands);
+        for (int size : SIZES) {
+            float scale = size / WatchFaceRenderer.DESIGNED_SIZE;
+            HandRenderer[] hands = {
+                    new Hand(resources, R.drawable.minute, R.drawable.minute, scale, 0, 0, 242f, 54f, 256f, 256f),
+                    VectorHand.minute(scale, 0, 0, color)};
+            String[] names = {"hand/bitmap", "hand/vector"};
+            for (int h = 0; h < hands.length; h++) {
+                HandRenderer hand = hands[h];
+                Bitmap target = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+                Canvas canvas = new Canvas(target);
+                Paint paint = new Paint();
+                Matrix matrix = new Matrix();
+                // 分針が一周する間を0.1度ずつ描く
+                long[] frameNanos = new long[3600];
+                long allocatedBefore = allocatedBytes();
+                for (int i = 0; i < frameNanos.length; i++) {
+                    long begin = System.nanoTime();
+                    hand.draw(canvas, paint, matrix, i / 10f, false);
+                    frameNanos[i] = System.nanoTime() - begin;
+                }
+                long allocated = allocatedBytes() - allocatedBefore;
+                System.out.println(report(names[h], size, frameNanos, allocated)
+                        + String.format("  %8d bytes held", hand.getByteCount()));
+                hand.release();
+                target.recycle();
+            }
+        }
+    }
+}
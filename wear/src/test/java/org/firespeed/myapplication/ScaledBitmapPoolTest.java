@@ -0,0 +1,114 @@
+package org.firespeed.myapplication;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+
+import org.firespeed.both.DisplaySpec;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class ScaledBitmapPoolTest {
+    private Resources mResources;
+    private ScaledBitmapPool mPool;
+
+    @Before
+    public void setUp() {
+        mResources = RuntimeEnvironment.application.getResources();
+        mPool = new ScaledBitmapPool();
+    }
+
+    @Test
+    public void sameBitmapIsSharedWithOneDecode() {
+        float scale = 320 / WatchFaceRenderer.DESIGNED_SIZE;
+        Bitmap first = mPool.acquire(mResources, R.drawable.hour, scale, Bitmap.Config.ARGB_8888);
+        Bitmap second = mPool.acquire(mResources, R.drawable.hour, scale, Bitmap.Config.ARGB_8888);
+        assertSame(first, second);
+        assertEquals(1, mPool.getMissCount());
+        assertEquals(1, mPool.getHitCount());
+        assertEquals(first.getByteCount(), mPool.getBytesInUse());
+
+        // 拡大率かConfigが違えば別のもの
+        Bitmap other = mPool.acquire(mResources, R.drawable.hour, scale * 2, Bitmap.Config.ARGB_8888);
+        assertNotSame(first, other);
+        assertEquals(2, mPool.getMissCount());
+
+        // 最後の参照を返すと再利用待ちになり、次のデコードで使われる
+        mPool.release(first);
+        assertEquals(first.getByteCount() + other.getByteCount(), mPool.getBytesInUse());
+        mPool.release(second);
+        assertEquals(other.getByteCount(), mPool.getBytesInUse());
+        assertEquals(first.getAllocationByteCount(), mPool.getBytesReusable());
+        mPool.acquire(mResources, R.drawable.hour, scale, Bitmap.Config.ARGB_8888);
+        assertEquals(1, mPool.getReuseCount());
+        assertEquals(0, mPool.getBytesReusable());
+
+        StringWriter dump = new StringWriter();
+        mPool.dump(new PrintWriter(dump), "");
+        assertTrue(dump.toString(), dump.toString().contains("hits=1 misses=3 reuses=1"));
+    }
+
+    @Test
+    public void dialBackgroundIsCroppedOnceAndShared() {
+        DisplaySpec spec = new DisplaySpec(360, 326, true);
+        Bitmap first = mPool.acquireDialBackground(mResources, R.drawable.background, spec.getScale(), spec);
+        Bitmap second = mPool.acquireDialBackground(mResources, R.drawable.background, spec.getScale(), spec);
+        assertSame(first, second);
+        assertEquals(360, first.getWidth());
+        assertEquals(326, first.getHeight());
+        assertEquals(1, mPool.getMissCount());
+        assertEquals(1, mPool.getHitCount());
+        // 切り抜く前の背景は持たない
+        assertEquals(first.getByteCount(), mPool.getBytesInUse());
+        assertEquals(0, mPool.getBytesReusable());
+
+        mPool.release(first);
+        mPool.release(second);
+        assertEquals(0, mPool.getBytesInUse());
+    }
+
+    @Test
+    public void prescaledAssetIsSharedByPath() {
+        String dir = PrescaledAssets.find(320, 320, true);
+        assertNotNull(dir);
+        Bitmap first = mPool.acquireAsset(mResources, dir + "/" + PrescaledAssets.BACKGROUND);
+        Bitmap second = mPool.acquireAsset(mResources, dir + "/" + PrescaledAssets.BACKGROUND);
+        assertSame(first, second);
+        assertEquals(320, first.getWidth());
+        assertEquals(1, mPool.getMissCount());
+        assertEquals(1, mPool.getHitCount());
+
+        // 別のパスは別のもの. 読めないパスはnull
+        assertNotSame(first, mPool.acquireAsset(mResources, dir + "/" + PrescaledAssets.HOUR));
+        assertNull(mPool.acquireAsset(mResources, dir + "/missing.png"));
+
+        mPool.release(first);
+        mPool.release(second);
+        assertEquals(first.getAllocationByteCount(), mPool.getBytesReusable());
+    }
+
+    @Test
+    public void dialBackgroundIsKeyedByShape() {
+        DisplaySpec round = new DisplaySpec(320, 320, true);
+        DisplaySpec square = new DisplaySpec(320, 320, false);
+        Bitmap roundBackground = mPool.acquireDialBackground(mResources, R.drawable.background, round.getScale(),
+                round);
+        Bitmap squareBackground = mPool.acquireDialBackground(mResources, R.drawable.background, square.getScale(),
+                square);
+        assertNotSame(roundBackground, squareBackground);
+        // 四角い画面では拡大縮小しただけのものと同じ
+        assertSame(squareBackground, mPool.acquire(mResources, R.drawable.background, square.getScale(),
+                Bitmap.Config.ARGB_8888));
+        assertEquals(2, mPool.getMissCount());
+    }
+}
@@ -0,0 +1,104 @@
+package org.firespeed.myapplication;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/**
+ * Engine.onCreateから最初のフレームまでと同じ手順をJVM上で回し、起動の時間を出す.
+ * firstFrameは組み立て中の代わりの描画まで、completeFrameは背景と針の画像で描けるまで.
+ * 背景と針の組み立てを最初のフレームで始める場合(draw)と、画面の大きさが分かった時点で始める場合(prepare)を比べる.
+ * 320と454は前もって拡大縮小した画像があり、300は実行時に拡大縮小する.
+ * 結果は標準出力に出すので、ビルドごとに見比べること.
+ */
+@RunWith(RobolectricTestRunner.class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class StartupBenchmark {
+    private static final int[] SIZES = {300, 320, 454};
+    private static final long FRAME_MS = 33;
+    private static final long TIMEOUT_MS = 10 * 1000;
+    private static final int RUNS = 5;
+    /**
+     * 2015/12/06 00:00 UTC.
+     */
+    private static final long START_MS = 1449360000000L;
+
+    /**
+     * 一回分の起動. 前の起動のキャッシュは捨ててから始める.
+     *
+     * @return {最初のフレームまで, 画像で描けるまで} (ns)
+     */
+    private static long[] start(Resources resources, int size, boolean prepare) throws InterruptedException {
+        ScaledBitmapPool.getInstance().trim();
+        HandSpriteCache.getInstance().evictAll();
+        StartupTrace trace = new StartupTrace();
+
+        int section = trace.begin("Engine.onCreate");
+        WatchFaceRenderer renderer = new WatchFaceRenderer(resources, FRAME_MS);
+        renderer.setTimeZone(TimeZone.getTimeZone("UTC"));
+        renderer.setRound(true);
+        AssetLoader loader = new AssetLoader(resources, 720, new AssetLoader.OnAssetsReadyListener() {
+            @Override
+            public void onAssetsReady() {
+            }
+        });
+        renderer.setAssetLoader(loader);
+        trace.end(section);
+        if (prepare) {
+            renderer.prepare(size, size);
+        }
+
+        Bitmap target = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(target);
+        long frame = 0;
+        long deadline = System.nanoTime() + TIMEOUT_MS * 1000000L;
+        do {
+            renderer.draw(canvas, START_MS + frame * FRAME_MS);
+            trace.onFrameDrawn(renderer.isLastFrameComplete());
+            if (renderer.isLastFrameComplete()) {
+                break;
+            }
+            frame++;
+            Thread.sleep(FRAME_MS);
+        } while (System.nanoTime() < deadline);
+
+        long[] result = {trace.getTimeToFirstFrameNanos(), trace.getTimeToCompleteFrameNanos()};
+        loader.quit();
+        renderer.release();
+        target.recycle();
+        return result;
+    }
+
+    @Test
+    public void timeToFirstFrame() throws Exception {
+        Resources resources = RuntimeEnvironment.application.getResources();
+        // 一回目はクラスの読み込みなどが入るので捨てる
+        start(resources, SIZES[0], true);
+        for (int size : SIZES) {
+            for (boolean prepare : new boolean[]{false, true}) {
+                long firstTotal = 0;
+                long completeTotal = 0;
+                for (int i = 0; i < RUNS; i++) {
+                    long[] result = start(resources, size, prepare);
+                    assertTrue(result[0] > 0);
+                    assertTrue("assets were not ready in time", result[1] >= result[0]);
+                    firstTotal += result[0];
+                    completeTotal += result[1];
+                }
+                System.out.println(String.format("%-16s %4dpx  firstFrame %8.2fms  completeFrame %8.2fms",
+                        prepare ? "startup/prepare" : "startup/draw", size,
+                        firstTotal / 1e6 / RUNS, completeTotal / 1e6 / RUNS));
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package org.firespeed.myapplication;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+
+import org.firespeed.both.DisplaySpec;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class TextLayerTest {
+    /**
+     * 2015/12/06 00:00 UTC.
+     */
+    private static final long START_MS = 1449360000000L;
+
+    private static class CountingSource implements TextLayer.Source {
+        String mText = "10%";
+        int mQueryCount;
+
+        @Override
+        public String getText(long timeMs, WallClock clock) {
+            mQueryCount++;
+            return mText;
+        }
+    }
+
+    private final WallClock mClock = new WallClock(TimeZone.getTimeZone("UTC"));
+    private TextLayer mLayer;
+    private CountingSource mSource;
+
+    @Before
+    public void setUp() {
+        mLayer = new TextLayer(Color.WHITE);
+        mSource = new CountingSource();
+        mLayer.addLabel(mSource, TextLayer.MINUTE_MS, 256f, 150f, 32f);
+        mLayer.setScale(1f);
+    }
+
+    private boolean update(long timeMs) {
+        mClock.setTimeInMillis(timeMs);
+        return mLayer.update(timeMs, mClock);
+    }
+
+    @Test
+    public void queriesOnlyOnCadence() {
+        assertTrue(update(START_MS + 30000));
+        // 1分の区切りまでは問い合わせない
+        for (long t = START_MS + 30000; t < START_MS + TextLayer.MINUTE_MS; t += 33) {
+            assertFalse(update(t));
+        }
+        assertEquals(1, mSource.mQueryCount);
+        assertFalse(update(START_MS + TextLayer.MINUTE_MS));
+        assertEquals(2, mSource.mQueryCount);
+        assertEquals(1, mLayer.getRenderCount());
+    }
+
+    @Test
+    public void rendersWhenContentOrScaleChanges() {
+        update(START_MS);
+        mSource.mText = "9%";
+        assertTrue(update(START_MS + TextLayer.MINUTE_MS));
+        assertEquals(2, mLayer.getRenderCount());
+        mLayer.setScale(0.7f);
+        assertTrue(update(START_MS + TextLayer.MINUTE_MS + 1));
+        assertEquals(3, mLayer.getRenderCount());
+        assertEquals(2, mSource.mQueryCount);
+    }
+
+    @Test
+    public void labelIsCenteredOnNonSquareScreen() {
+        DisplaySpec spec = new DisplaySpec(360, 326, true);
+        mLayer.setTransform(spec.getScale(), spec.getBackgroundLeft(), spec.getBackgroundTop());
+        update(START_MS);
+        Bitmap target = Bitmap.createBitmap(spec.width, spec.height, Bitmap.Config.ARGB_8888);
+        mLayer.draw(new Canvas(target));
+        int left = Integer.MAX_VALUE;
+        int right = -1;
+        int bottom = -1;
+        for (int x = 0; x < spec.width; x++) {
+            for (int y = 0; y < spec.height; y++) {
+                if (Color.alpha(target.getPixel(x, y)) != 0) {
+                    left = Math.min(left, x);
+                    right = Math.max(right, x);
+                    bottom = Math.max(bottom, y);
+                }
+            }
+        }
+        // 背景の中心は画面の中心に、背景の上端は画面の上にはみ出している
+        assertEquals(spec.width / 2f, (left + right) / 2f, 2f);
+        assertEquals(spec.getBackgroundTop() + 150f * spec.getScale(), bottom, 3f);
+        target.recycle();
+    }
+
+    @Test
+    public void drawsCachedBitmap() {
+        update(START_MS);
+        Bitmap target = Bitmap.createBitmap(512, 512, Bitmap.Config.ARGB_8888);
+        mLayer.draw(new Canvas(target));
+        boolean painted = false;
+        for (int x = 200; x < 312 && !painted; x++) {
+            for (int y = 110; y < 160 && !painted; y++) {
+                painted = Color.alpha(target.getPixel(x, y)) != 0;
+            }
+        }
+        assertTrue(painted);
+        assertTrue(mLayer.getByteCount() > 0);
+        mLayer.recycle();
+        assertEquals(0, mLayer.getByteCount());
+        assertTrue(update(START_MS + 1));
+        target.recycle();
+    }
+}
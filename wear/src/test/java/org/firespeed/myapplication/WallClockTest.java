@@ -0,0 +1,85 @@
+package org.firespeed.myapplication;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class WallClockTest {
+    /**
+     * 2015/03/08 07:00 UTC. ニューヨークで夏時間が始まる瞬間.
+     */
+    private static final long NEW_YORK_DST_START = 1425798000000L;
+    /**
+     * 2015/11/01 06:00 UTC. ニューヨークで夏時間が終わる瞬間.
+     */
+    private static final long NEW_YORK_DST_END = 1446357600000L;
+
+    private static void assertSameAsCalendar(WallClock clock, long utcMs) {
+        Calendar calendar = Calendar.getInstance(clock.getTimeZone());
+        calendar.setTimeInMillis(utcMs);
+        clock.setTimeInMillis(utcMs);
+        String message = clock.getTimeZone().getID() + " at " + utcMs;
+        assertEquals(message, calendar.get(Calendar.HOUR_OF_DAY), clock.getHourOfDay());
+        assertEquals(message, calendar.get(Calendar.HOUR), clock.getHour());
+        assertEquals(message, calendar.get(Calendar.MINUTE), clock.getMinute());
+        assertEquals(message, calendar.get(Calendar.SECOND), clock.getSecond());
+        assertEquals(message, calendar.get(Calendar.MILLISECOND), clock.getMillisecond());
+    }
+
+    @Test
+    public void springForward() throws Exception {
+        WallClock clock = new WallClock(TimeZone.getTimeZone("America/New_York"));
+        clock.setTimeInMillis(NEW_YORK_DST_START - 1);
+        assertEquals(1, clock.getHourOfDay());
+        assertEquals(59, clock.getMinute());
+        assertEquals(999, clock.getMillisecond());
+        clock.setTimeInMillis(NEW_YORK_DST_START);
+        assertEquals(3, clock.getHourOfDay());
+        assertEquals(0, clock.getMinute());
+    }
+
+    @Test
+    public void fallBack() throws Exception {
+        WallClock clock = new WallClock(TimeZone.getTimeZone("America/New_York"));
+        clock.setTimeInMillis(NEW_YORK_DST_END - 1);
+        assertEquals(1, clock.getHourOfDay());
+        assertEquals(59, clock.getMinute());
+        clock.setTimeInMillis(NEW_YORK_DST_END);
+        assertEquals(1, clock.getHourOfDay());
+        assertEquals(0, clock.getMinute());
+    }
+
+    @Test
+    public void sweepAcrossTransitions() throws Exception {
+        String[] ids = {"America/New_York", "Europe/London", "Asia/Tokyo", "Australia/Lord_Howe",
+                "America/St_Johns", "Asia/Kathmandu", "Pacific/Chatham"};
+        for (String id : ids) {
+            WallClock clock = new WallClock(TimeZone.getTimeZone(id));
+            for (long t = NEW_YORK_DST_START - 86400000L; t < NEW_YORK_DST_END + 86400000L; t += 997L * 61) {
+                assertSameAsCalendar(clock, t);
+            }
+        }
+    }
+
+    @Test
+    public void timeZoneChange() throws Exception {
+        WallClock clock = new WallClock(TimeZone.getTimeZone("Asia/Tokyo"));
+        assertSameAsCalendar(clock, NEW_YORK_DST_START);
+        clock.setTimeZone(TimeZone.getTimeZone("America/New_York"));
+        assertSameAsCalendar(clock, NEW_YORK_DST_START);
+        clock.setTimeZone(TimeZone.getTimeZone("Asia/Kathmandu"));
+        assertSameAsCalendar(clock, NEW_YORK_DST_START + 1);
+    }
+
+    @Test
+    public void offsetIsCached() throws Exception {
+        WallClock clock = new WallClock(TimeZone.getTimeZone("Asia/Tokyo"));
+        for (long t = 0; t < 60 * 1000; t += 33) {
+            clock.setTimeInMillis(NEW_YORK_DST_START + t);
+        }
+        assertEquals(2, clock.getOffsetLookupCount());
+    }
+}
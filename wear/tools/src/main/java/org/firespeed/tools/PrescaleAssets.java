@@ -0,0 +1,176 @@
+package org.firespeed.tools;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+import javax.imageio.ImageIO;
+
+/**
+ * よく使われる画面の大きさと形に合わせて、背景と針を前もって拡大縮小しておくビルド時のツール.
+ * JDKだけで動く. wearモジュールのassetsに画像を、ソースに引くためのクラスを書き出す.
+ * <pre>
+ * javac -d build/tools wear/tools/src/main/java/org/firespeed/tools/PrescaleAssets.java
+ * java -cp build/tools org.firespeed.tools.PrescaleAssets both/src/main/res/drawable-nodpi wear/src/main
+ * </pre>
+ * 拡大縮小の結果は実行時の{@code ScaledBitmapPool}・{@code SpriteRenderer}と同じ大きさ・位置になるようにしてある.
+ */
+public class PrescaleAssets {
+    /**
+     * 背景と針の画像が想定している画面の大きさ. {@code DisplaySpec.DESIGNED_SIZE}と同じ.
+     */
+    private static final float DESIGNED_SIZE = 512f;
+    private static final String ASSET_DIR = "prescaled";
+    private static final String PACKAGE = "org.firespeed.myapplication";
+    private static final String CLASS_NAME = "PrescaledAssets";
+    private static final String[] HANDS = {"hour", "minute"};
+
+    /**
+     * 作っておく画面. {幅, 高さ, 丸いかどうか}.
+     */
+    private static final int[][] SPECS = {
+            {320, 320, 1},
+            {320, 290, 1},
+            {360, 360, 1},
+            {360, 326, 1},
+            {390, 390, 1},
+            {400, 400, 1},
+            {454, 454, 1},
+            {280, 280, 0},
+            {320, 320, 0},
+    };
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: PrescaleAssets <drawable-nodpi dir> <wear src/main dir>");
+            System.exit(1);
+        }
+        File source = new File(args[0]);
+        File main = new File(args[1]);
+        BufferedImage background = ImageIO.read(new File(source, "background.png"));
+        BufferedImage[] hands = new BufferedImage[HANDS.length];
+        for (int i = 0; i < HANDS.length; i++) {
+            hands[i] = ImageIO.read(new File(source, HANDS[i] + ".png"));
+        }
+        for (int[] spec : SPECS) {
+            int width = spec[0];
+            int height = spec[1];
+            boolean round = spec[2] != 0;
+            File dir = new File(new File(main, "assets/" + ASSET_DIR), getName(width, height, round));
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("cannot create " + dir);
+            }
+            float scale = Math.max(width, height) / DESIGNED_SIZE;
+            write(createBackground(background, width, height, round, scale), new File(dir, "background.png"));
+            for (int i = 0; i < HANDS.length; i++) {
+                write(scale(hands[i], scale), new File(dir, HANDS[i] + ".png"));
+            }
+            System.out.println("wrote " + dir);
+        }
+        File java = new File(main, "java/" + PACKAGE.replace('.', '/') + "/" + CLASS_NAME + ".java");
+        writeLookup(java);
+        System.out.println("wrote " + java);
+    }
+
+    private static String getName(int width, int height, boolean round) {
+        return width + "x" + height + (round ? "-round" : "");
+    }
+
+    /**
+     * BitmapFactoryがinDensity/inTargetDensityで拡大縮小した時と同じ大きさにする.
+     */
+    private static BufferedImage scale(BufferedImage source, float scale) {
+        int width = Math.max(1, (int) (source.getWidth() * scale + 0.5f));
+        int height = Math.max(1, (int) (source.getHeight() * scale + 0.5f));
+        Image scaled = source.getScaledInstance(width, height, Image.SCALE_AREA_AVERAGING);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.drawImage(scaled, 0, 0, null);
+        g.dispose();
+        return image;
+    }
+
+    /**
+     * 画面の大きさに切り抜いた背景. 丸い画面では見えない四隅を透明にする. SpriteRenderer.createDialBackgroundと同じ.
+     */
+    private static BufferedImage createBackground(BufferedImage source, int width, int height, boolean round,
+                                                  float scale) {
+        BufferedImage scaled = scale(source, scale);
+        int longSize = Math.max(width, height);
+        int left = Math.round((width - longSize) / 2f);
+        int top = Math.round((height - longSize) / 2f);
+        BufferedImage image = new BufferedImage(width, height,
+                round ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        if (round) {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setColor(Color.WHITE);
+            float radius = longSize / 2f;
+            g.fill(new Ellipse2D.Float(width / 2f - radius, height / 2f - radius, radius * 2, radius * 2));
+            g.setComposite(AlphaComposite.SrcIn);
+        }
+        g.drawImage(scaled, left, top, null);
+        g.dispose();
+        return image;
+    }
+
+    private static void write(BufferedImage image, File file) throws IOException {
+        if (!ImageIO.write(image, "png", file)) {
+            throw new IOException("no png writer for " + file);
+        }
+    }
+
+    private static void writeLookup(File file) throws IOException {
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            out.println("// PrescaleAssetsが生成したファイル. 手で編集しないこと.");
+            out.println("package " + PACKAGE + ";");
+            out.println();
+            out.println("/**");
+            out.println(" * ビルド時に拡大縮小を済ませた背景と針のassets内の置き場所を、画面の大きさと形から引く.");
+            out.println(" */");
+            out.println("final class " + CLASS_NAME + " {");
+            out.println("    static final String BACKGROUND = \"background.png\";");
+            out.println("    static final String HOUR = \"hour.png\";");
+            out.println("    static final String MINUTE = \"minute.png\";");
+            out.println();
+            out.println("    private " + CLASS_NAME + "() {");
+            out.println("    }");
+            out.println();
+            out.println("    /**");
+            out.println("     * 指定した画面向けのディレクトリ. 用意していない画面ではnullを返す.");
+            out.println("     */");
+            out.println("    static String find(int width, int height, boolean round) {");
+            out.println("        if (round) {");
+            writeCases(out, true);
+            out.println("        } else {");
+            writeCases(out, false);
+            out.println("        }");
+            out.println("        return null;");
+            out.println("    }");
+            out.println("}");
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void writeCases(PrintWriter out, boolean round) {
+        for (int[] spec : SPECS) {
+            if ((spec[2] != 0) != round) {
+                continue;
+            }
+            out.println("            if (width == " + spec[0] + " && height == " + spec[1] + ") {");
+            out.println("                return \"" + ASSET_DIR + "/" + getName(spec[0], spec[1], round) + "\";");
+            out.println("            }");
+        }
+    }
+}